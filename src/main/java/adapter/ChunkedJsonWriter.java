@@ -0,0 +1,65 @@
+package adapter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Buffers generated JSON and forwards it to the analytics library in fixed size chunks.
+// Closing the writer flushes the remainder as the last chunk, aborting drops it and tells the library
+// to discard the chunks it already got.
+class ChunkedJsonWriter extends Writer {
+    private final JsonAnalyticsLibrary library;
+    private final char[] buffer;
+    private int count;
+    private boolean closed;
+
+    ChunkedJsonWriter(JsonAnalyticsLibrary library, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.library = library;
+        this.buffer = new char[chunkSize];
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(cbuf, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == buffer.length) {
+                emit(false);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        // chunks are emitted only when full or on close, flushing early would just produce smaller chunks
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        emit(true);
+    }
+
+    void abort() {
+        if (closed) return;
+        closed = true;
+        count = 0;
+        library.abortStockDataChunks();
+    }
+
+    private void emit(boolean last) {
+        library.processStockDataChunk(new String(buffer, 0, count), last);
+        count = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Writer already closed");
+    }
+}
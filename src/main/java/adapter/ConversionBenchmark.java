@@ -0,0 +1,71 @@
+package adapter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares building a fresh XmlMapper/ObjectMapper per call (the old adapter behaviour)
+ * against the shared StockDataConversionEngine, single threaded and with a thread per core.
+ */
+public class ConversionBenchmark {
+    private static final String XML = "<stock><name>Apple Inc.</name><price>150.10</price></stock>";
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+
+    interface Conversion {
+        String convert(String xml) throws JsonProcessingException;
+    }
+
+    static String perCall(String xml) throws JsonProcessingException {
+        XmlMapper xmlMapper = new XmlMapper();
+        Object obj = xmlMapper.readValue(xml, Object.class);
+        ObjectMapper jsonMapper = new ObjectMapper();
+        return jsonMapper.writeValueAsString(obj);
+    }
+
+    static long run(Conversion conversion, int iterations) throws JsonProcessingException {
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            sink += conversion.convert(XML).length();
+        }
+        return sink;
+    }
+
+    static double opsPerSecond(Conversion conversion, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> run(conversion, WARMUP)));
+            }
+            for (Future<Long> f : results) f.get();
+            results.clear();
+
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> run(conversion, ITERATIONS)));
+            }
+            for (Future<Long> f : results) f.get();
+            long elapsed = System.nanoTime() - start;
+            return (double) ITERATIONS * threads / elapsed * 1_000_000_000L;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        StockDataConversionEngine engine = StockDataConversionEngine.getInstance();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : new int[]{1, cores}) {
+            System.out.printf("threads=%d per-call: %.0f ops/s%n", threads, opsPerSecond(ConversionBenchmark::perCall, threads));
+            System.out.printf("threads=%d shared  : %.0f ops/s%n", threads, opsPerSecond(engine::toJson, threads));
+        }
+    }
+}
@@ -1,38 +1,163 @@
 package adapter;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 
 interface XmlStockDataProvider {
     String getStockDataAsXml();
 }
 
+// byte oriented variant for files and sockets, the adapter parses the bytes without building a String
+interface XmlStockDataByteProvider {
+    ByteBuffer getStockDataAsBytes() throws IOException;
+
+    // for the streaming path, documents too large for a single ByteBuffer (2 GB) override this
+    default InputStream openStream() throws IOException {
+        return new ByteBufferBackedInputStream(getStockDataAsBytes());
+    }
+
+    /**
+     * Maps the file read-only on every call, so the latest dump is picked up.
+     * A single mapping is limited to 2 GB, larger files are only available through openStream,
+     * which reads the file sequentially through its channel.
+     */
+    static XmlStockDataByteProvider mappedFile(Path path) {
+        return new XmlStockDataByteProvider() {
+            @Override
+            public ByteBuffer getStockDataAsBytes() throws IOException {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    if (channel.size() > Integer.MAX_VALUE) {
+                        throw new IOException(path + " is larger than 2 GB, use the streaming conversion");
+                    }
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+
+            @Override
+            public InputStream openStream() throws IOException {
+                return new BufferedInputStream(Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ)), 64 * 1024);
+            }
+        };
+    }
+
+    // drains a blocking channel such as a socket into a direct buffer, which grows as needed
+    static XmlStockDataByteProvider channel(ReadableByteChannel channel) {
+        // a non-blocking channel returns 0 when no data is ready and the loop below would spin
+        if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalArgumentException("channel must be in blocking mode");
+        }
+        return () -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            while (channel.read(buffer) >= 0) {
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                    buffer.flip();
+                    bigger.put(buffer);
+                    buffer = bigger;
+                }
+            }
+            buffer.flip();
+            return buffer;
+        };
+    }
+}
+
 abstract class JsonAnalyticsLibrary {
     void processStockData(String jsonData) {
         System.out.println("Processing JSON Data: " + jsonData);
     }
+
+    // batches come from StockIngestionPipeline, libraries that can bulk load should override this
+    void processStockDataBatch(List<String> jsonBatch) {
+        for (String jsonData : jsonBatch) {
+            processStockData(jsonData);
+        }
+    }
+
+    // called repeatedly while a document is being streamed, last is true for the final chunk
+    void processStockDataChunk(String jsonChunk, boolean last) {
+        System.out.println("Processing JSON Chunk: " + jsonChunk + (last ? " [end]" : ""));
+    }
+
+    // the document being streamed turned out to be malformed, chunks received since the last one marked last are void
+    void abortStockDataChunks() {
+        System.out.println("Discarding partial JSON document");
+    }
+
+    // in-process callers can hand over typed quotes and skip JSON text altogether
+    void processStockQuote(StockQuote quote) {
+        System.out.println("Processing Stock Quote: " + quote);
+    }
 }
 
 class XmlToJsonStockDataAdapter extends JsonAnalyticsLibrary {
+    static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+
     private XmlStockDataProvider provider;
+    private StockDataConversionEngine engine;
 
     public XmlToJsonStockDataAdapter(XmlStockDataProvider provider) {
+        this(provider, StockDataConversionEngine.getInstance());
+    }
+
+    XmlToJsonStockDataAdapter(XmlStockDataProvider provider, StockDataConversionEngine engine) {
         this.provider = provider;
+        this.engine = engine;
     }
 
     void processXMLStockData() {
         String xmlData = this.provider.getStockDataAsXml();
-        XmlMapper xmlMapper = new XmlMapper();
         try {
-            Object obj = xmlMapper.readValue(xmlData, Object.class);
-            ObjectMapper jsonMapper = new ObjectMapper();
-            String jsonData = jsonMapper.writeValueAsString(obj);
+            String jsonData = engine.toJson(xmlData);
             this.processStockData(jsonData);
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
     }
+
+    void processXMLStockQuote() {
+        String xmlData = this.provider.getStockDataAsXml();
+        try {
+            this.processStockQuote(engine.readQuote(xmlData));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void processXMLStockDataStreaming() {
+        processXMLStockDataStreaming(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Copies tokens from the XML parser straight into a JSON generator, no intermediate Object tree is built.
+     * The JSON is handed to processStockDataChunk in pieces of at most chunkSize chars, so memory stays flat
+     * whatever the size of the feed. Repeated XML elements become a JSON array, as in the tree based path.
+     */
+    void processXMLStockDataStreaming(int chunkSize) {
+        String xmlData = this.provider.getStockDataAsXml();
+        ChunkedJsonWriter out = new ChunkedJsonWriter(this, chunkSize);
+        try {
+            engine.streamToJson(new StringReader(xmlData), out);
+        } catch (IOException e) {
+            out.abort();
+            throw new RuntimeException(e);
+        }
+    }
 }
 
 /**
@@ -57,5 +182,22 @@ public class Main {
 
 //        lib.processStockData(provider.getStockDataAsJson());
         adapter.processXMLStockData();
+        adapter.processXMLStockDataStreaming();
+        adapter.processXMLStockQuote();
+
+        XmlStockDataByteProvider byteProvider = () -> ByteBuffer.wrap(
+                "<stock><name>Apple Inc.</name><price>150.10</price></stock>".getBytes(StandardCharsets.UTF_8));
+        XmlBytesToJsonStockDataAdapter bytesAdapter = new XmlBytesToJsonStockDataAdapter(byteProvider);
+        bytesAdapter.processXMLStockData();
+        bytesAdapter.processXMLStockQuote();
+
+        List<XmlStockDataProvider> providers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String xml = "<stock><name>Ticker " + i + "</name><price>" + (100 + i) + ".25</price></stock>";
+            providers.add(() -> xml);
+        }
+        try (StockIngestionPipeline pipeline = new StockIngestionPipeline(providers, adapter, 4, 4, 64)) {
+            pipeline.pollOnce();
+        }
     }
 }
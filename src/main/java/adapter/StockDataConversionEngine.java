@@ -0,0 +1,242 @@
+package adapter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.dataformat.xml.XmlFactory;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Shared XML to JSON conversion engine.
+ * Mappers are expensive to build, so they are created once and only immutable ObjectReader/ObjectWriter
+ * instances and factories are exposed, all of which are safe to use from many threads at once.
+ */
+class StockDataConversionEngine {
+    private static volatile StockDataConversionEngine instance = null;
+
+    private final XmlFactory xmlFactory;
+    private final JsonFactory jsonFactory;
+    private final ObjectReader xmlReader;
+    private final ObjectWriter jsonWriter;
+
+    private StockDataConversionEngine() {
+        XmlMapper xmlMapper = new XmlMapper();
+        ObjectMapper jsonMapper = new ObjectMapper();
+        this.xmlFactory = xmlMapper.getFactory();
+        this.jsonFactory = jsonMapper.getFactory();
+        this.xmlReader = xmlMapper.readerFor(Object.class);
+        this.jsonWriter = jsonMapper.writer();
+    }
+
+    public static StockDataConversionEngine getInstance() {
+        if (instance == null)
+            synchronized (StockDataConversionEngine.class) {
+                if (instance == null)
+                    instance = new StockDataConversionEngine();
+            }
+        return instance;
+    }
+
+    // tree based conversion, same output as binding with a fresh XmlMapper/ObjectMapper pair
+    String toJson(String xmlData) throws JsonProcessingException {
+        Object obj = xmlReader.readValue(xmlData);
+        return jsonWriter.writeValueAsString(obj);
+    }
+
+    String toJson(ByteBuffer xmlData) throws IOException {
+        try (JsonParser parser = createParser(xmlData)) {
+            Object obj = xmlReader.readValue(parser);
+            return jsonWriter.writeValueAsString(obj);
+        }
+    }
+
+    // token by token conversion, see XmlToJsonStockDataAdapter.processXMLStockDataStreaming
+    void streamToJson(Reader xmlData, Writer out) throws IOException {
+        try (JsonParser parser = xmlFactory.createParser(xmlData)) {
+            copy(parser, out);
+        }
+    }
+
+    // closes xmlData when done
+    void streamToJson(InputStream xmlData, Writer out) throws IOException {
+        try (JsonParser parser = xmlFactory.createParser(xmlData)) {
+            copy(parser, out);
+        }
+    }
+
+    // out is closed only when the whole document was copied, a parse error leaves it open and the caller decides
+    // what to do with the partial output. Auto close is off so the generator neither completes the open objects
+    // nor closes out on the way up
+    private void copy(JsonParser parser, Writer out) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            if (parser.nextToken() != null) {
+                copyValue(parser, generator);
+            }
+        }
+        out.close();
+    }
+
+    // copies the value the parser is on, like copyCurrentStructure but folding repeated elements into arrays
+    private static void copyValue(JsonParser parser, JsonGenerator out) throws IOException {
+        switch (parser.currentToken()) {
+            case START_OBJECT:
+                copyObject(parser, out);
+                break;
+            case START_ARRAY:
+                out.writeStartArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.currentToken() == null) throw new IOException("Unexpected end of stock document");
+                    copyValue(parser, out);
+                }
+                out.writeEndArray();
+                break;
+            default:
+                out.copyCurrentEvent(parser);
+        }
+    }
+
+    /**
+     * Repeated XML siblings arrive as repeated field names, which most JSON readers would collapse to the last one.
+     * They are written as one field holding an array instead, the same shape the tree based path produces.
+     * Whether a name repeats is only known when the next sibling starts, so the first element of every run is
+     * buffered; once its name repeats the array is opened and the rest of the run is streamed straight through.
+     * For a feed of many <stock> elements that means one stock is held in memory, not the feed.
+     * A name that comes back after other siblings can't be merged without holding the whole object, so it is
+     * rejected rather than written as a duplicate key.
+     */
+    private static void copyObject(JsonParser parser, JsonGenerator out) throws IOException {
+        out.writeStartObject();
+        String name = null;
+        TokenBuffer first = null;
+        boolean inArray = false;
+        Set<String> ended = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals(name)) {
+                if (!inArray) {
+                    out.writeFieldName(name);
+                    out.writeStartArray();
+                    replay(first, out);
+                    first = null;
+                    inArray = true;
+                }
+                copyValue(parser, out);
+            } else {
+                if (name != null) {
+                    if (ended == null) ended = new HashSet<>();
+                    ended.add(name);
+                }
+                if (ended != null && ended.contains(field)) {
+                    throw new IOException("Repeated element <" + field + "> is not adjacent to its siblings of the same name, "
+                            + "streaming it would produce duplicate JSON keys");
+                }
+                endRun(name, first, inArray, out);
+                name = field;
+                inArray = false;
+                first = new TokenBuffer(null, false);
+                copyValue(parser, first);
+            }
+        }
+        if (parser.currentToken() != JsonToken.END_OBJECT) {
+            throw new IOException("Unexpected end of stock document");
+        }
+        endRun(name, first, inArray, out);
+        out.writeEndObject();
+    }
+
+    private static void endRun(String name, TokenBuffer first, boolean inArray, JsonGenerator out) throws IOException {
+        if (name == null) return;
+        if (inArray) {
+            out.writeEndArray();
+        } else {
+            out.writeFieldName(name);
+            replay(first, out);
+        }
+    }
+
+    private static void replay(TokenBuffer buffered, JsonGenerator out) throws IOException {
+        try (JsonParser parser = buffered.asParser()) {
+            parser.nextToken();
+            out.copyCurrentStructure(parser);
+        }
+    }
+
+    /**
+     * Parses the raw bytes in place: heap buffers are handed over as their backing array,
+     * direct and memory-mapped buffers are read through a stream view. Neither decodes to a String first.
+     * The buffer's position is left untouched.
+     */
+    private JsonParser createParser(ByteBuffer xmlData) throws IOException {
+        if (xmlData.hasArray()) {
+            return xmlFactory.createParser(xmlData.array(), xmlData.arrayOffset() + xmlData.position(), xmlData.remaining());
+        }
+        return xmlFactory.createParser(new ByteBufferBackedInputStream(xmlData.duplicate()));
+    }
+
+    StockQuote readQuote(String xmlData) throws IOException {
+        return readQuote(new StringReader(xmlData));
+    }
+
+    /**
+     * Typed fast path for <stock><name>..</name><price>..</price></stock>.
+     * Walks the parser tokens directly, the price text is parsed into fixed-point without a double in between.
+     * Unknown elements, and name or price elements that have child elements, are skipped.
+     */
+    StockQuote readQuote(Reader xmlData) throws IOException {
+        try (JsonParser parser = xmlFactory.createParser(xmlData)) {
+            return readQuote(parser);
+        }
+    }
+
+    StockQuote readQuote(ByteBuffer xmlData) throws IOException {
+        try (JsonParser parser = createParser(xmlData)) {
+            return readQuote(parser);
+        }
+    }
+
+    StockQuote readQuote(JsonParser parser) throws IOException {
+        if (parser.currentToken() == null && parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a <stock> element");
+        }
+        String name = null;
+        long price = 0;
+        boolean hasPrice = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (!value.isScalarValue()) {
+                parser.skipChildren();
+            } else if ("name".equals(field)) {
+                name = parser.getText();
+            } else if ("price".equals(field)) {
+                price = StockQuote.parsePrice(parser.getText());
+                hasPrice = true;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (name == null || !hasPrice) {
+            throw new IOException("Stock quote needs both name and price");
+        }
+        return new StockQuote(name, price);
+    }
+}
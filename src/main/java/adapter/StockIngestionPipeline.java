@@ -0,0 +1,135 @@
+package adapter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls many XmlStockDataProviders, converts their documents on a bounded worker pool and pushes
+ * fixed size batches of JSON into the analytics library from a single dispatcher thread.
+ *
+ * Backpressure works in two places:
+ * 1. the converted queue is bounded, workers block on it when analytics falls behind
+ * 2. the worker queue is bounded too and rejected polls run on the polling thread (CallerRunsPolicy),
+ *    which slows down polling instead of piling up documents in memory
+ */
+class StockIngestionPipeline implements AutoCloseable {
+    private static final long FLUSH_INTERVAL_MILLIS = 50;
+
+    private final List<XmlStockDataProvider> providers;
+    private final JsonAnalyticsLibrary analytics;
+    private final StockDataConversionEngine engine;
+    private final int batchSize;
+    private final ThreadPoolExecutor workers;
+    private final BlockingQueue<String> converted;
+    private final ScheduledExecutorService poller;
+    private final Thread dispatcher;
+    // set by close, stops new polls
+    private volatile boolean closed;
+    // cleared once the workers are done, the dispatcher then drains what is left and exits
+    private volatile boolean running = true;
+
+    StockIngestionPipeline(List<XmlStockDataProvider> providers, JsonAnalyticsLibrary analytics,
+                           int workerCount, int batchSize, int queueCapacity) {
+        this.providers = new ArrayList<>(providers);
+        this.analytics = analytics;
+        this.engine = StockDataConversionEngine.getInstance();
+        this.batchSize = batchSize;
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.converted = new ArrayBlockingQueue<>(queueCapacity);
+        this.poller = Executors.newSingleThreadScheduledExecutor();
+        this.dispatcher = new Thread(this::dispatch, "stock-ingestion-dispatcher");
+        this.dispatcher.start();
+    }
+
+    StockIngestionPipeline(List<XmlStockDataProvider> providers, JsonAnalyticsLibrary analytics) {
+        this(providers, analytics, Runtime.getRuntime().availableProcessors(), 64, 1024);
+    }
+
+    // polls every provider each pollIntervalMillis until the pipeline is closed
+    void start(long pollIntervalMillis) {
+        poller.scheduleWithFixedDelay(this::pollOnce, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void pollOnce() {
+        for (XmlStockDataProvider provider : providers) {
+            if (closed) return;
+            workers.execute(() -> convert(provider));
+        }
+    }
+
+    private void convert(XmlStockDataProvider provider) {
+        try {
+            converted.put(engine.toJson(provider.getStockDataAsXml()));
+        } catch (JsonProcessingException e) {
+            System.err.println("Skipping malformed stock document: " + e.getOriginalMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch() {
+        List<String> batch = new ArrayList<>(batchSize);
+        long deadline = System.currentTimeMillis() + FLUSH_INTERVAL_MILLIS;
+        try {
+            while (running || !converted.isEmpty()) {
+                String json = converted.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (json != null) {
+                    batch.add(json);
+                    converted.drainTo(batch, batchSize - batch.size());
+                }
+                // full batches go out right away, a partial one only after the flush interval so a quiet feed is not held back
+                if (batch.size() == batchSize || (!batch.isEmpty() && System.currentTimeMillis() >= deadline)) {
+                    deliver(batch);
+                    batch = new ArrayList<>(batchSize);
+                    deadline = System.currentTimeMillis() + FLUSH_INTERVAL_MILLIS;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!batch.isEmpty()) {
+            deliver(batch);
+        }
+    }
+
+    // a failing batch is reported and dropped, the dispatcher must keep draining or the workers block forever
+    private void deliver(List<String> batch) {
+        try {
+            analytics.processStockDataBatch(batch);
+        } catch (RuntimeException e) {
+            System.err.println("Analytics rejected a batch of " + batch.size() + " stock documents: " + e);
+        }
+    }
+
+    // stops polling, lets in-flight conversions finish and flushes the last partial batch
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            poller.shutdown();
+            poller.awaitTermination(1, TimeUnit.MINUTES);
+            // the dispatcher keeps draining meanwhile, so workers blocked on a full queue get to finish
+            workers.shutdown();
+            if (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                // stuck workers would keep the JVM alive, interrupt them and give up on their documents
+                workers.shutdownNow();
+                workers.awaitTermination(1, TimeUnit.SECONDS);
+            }
+            running = false;
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            running = false;
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
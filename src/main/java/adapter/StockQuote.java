@@ -0,0 +1,83 @@
+package adapter;
+
+/**
+ * Compact typed form of a <stock> document.
+ * The price is held as a fixed-point long with PRICE_SCALE decimals (150.10 -> 1_501_000),
+ * so it never goes through text or double once parsed.
+ */
+final class StockQuote {
+    static final int PRICE_SCALE = 4;
+    static final long PRICE_UNIT = 10_000L;
+
+    private final String name;
+    private final long price;
+
+    StockQuote(String name, long price) {
+        this.name = name;
+        this.price = price;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    // fixed-point price, divide by PRICE_UNIT for the decimal value
+    long getPrice() {
+        return price;
+    }
+
+    /**
+     * Parses a decimal such as "150.10" or "-0.5" into a fixed-point long, straight from the characters
+     * without going through double or BigDecimal. Digits past PRICE_SCALE are rounded half up.
+     */
+    static long parsePrice(CharSequence text) {
+        int i = 0;
+        int end = text.length();
+        while (i < end && Character.isWhitespace(text.charAt(i))) i++;
+        while (end > i && Character.isWhitespace(text.charAt(end - 1))) end--;
+        if (i == end) throw new NumberFormatException("Empty price");
+
+        boolean negative = false;
+        if (text.charAt(i) == '-' || text.charAt(i) == '+') {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long value = 0;
+        int fractionDigits = -1;
+        boolean roundUp = false;
+        boolean sawDigit = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Invalid price: " + text);
+            }
+            sawDigit = true;
+            if (fractionDigits == PRICE_SCALE) {
+                roundUp = c >= '5';
+                fractionDigits++;
+                continue;
+            }
+            if (fractionDigits > PRICE_SCALE) continue;
+            value = Math.addExact(Math.multiplyExact(value, 10), c - '0');
+            if (fractionDigits >= 0) fractionDigits++;
+        }
+        if (!sawDigit) throw new NumberFormatException("Invalid price: " + text);
+
+        for (int scale = Math.max(fractionDigits, 0); scale < PRICE_SCALE; scale++) {
+            value = Math.multiplyExact(value, 10);
+        }
+        if (roundUp) value = Math.addExact(value, 1);
+        return negative ? -value : value;
+    }
+
+    @Override
+    public String toString() {
+        long abs = Math.abs(price);
+        String fraction = Long.toString(PRICE_UNIT + abs % PRICE_UNIT).substring(1);
+        return "StockQuote{name=" + name + ", price=" + (price < 0 ? "-" : "") + abs / PRICE_UNIT + "." + fraction + "}";
+    }
+}
@@ -0,0 +1,48 @@
+package adapter;
+
+import java.io.IOException;
+
+// Adapter for byte oriented providers, mirrors XmlToJsonStockDataAdapter without the String round trip.
+class XmlBytesToJsonStockDataAdapter extends JsonAnalyticsLibrary {
+    private XmlStockDataByteProvider provider;
+    private StockDataConversionEngine engine;
+
+    public XmlBytesToJsonStockDataAdapter(XmlStockDataByteProvider provider) {
+        this(provider, StockDataConversionEngine.getInstance());
+    }
+
+    XmlBytesToJsonStockDataAdapter(XmlStockDataByteProvider provider, StockDataConversionEngine engine) {
+        this.provider = provider;
+        this.engine = engine;
+    }
+
+    void processXMLStockData() {
+        try {
+            this.processStockData(engine.toJson(provider.getStockDataAsBytes()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void processXMLStockQuote() {
+        try {
+            this.processStockQuote(engine.readQuote(provider.getStockDataAsBytes()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void processXMLStockDataStreaming() {
+        processXMLStockDataStreaming(XmlToJsonStockDataAdapter.DEFAULT_CHUNK_SIZE);
+    }
+
+    void processXMLStockDataStreaming(int chunkSize) {
+        ChunkedJsonWriter out = new ChunkedJsonWriter(this, chunkSize);
+        try {
+            engine.streamToJson(provider.openStream(), out);
+        } catch (IOException e) {
+            out.abort();
+            throw new RuntimeException(e);
+        }
+    }
+}
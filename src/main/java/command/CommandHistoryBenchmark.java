@@ -0,0 +1,105 @@
+package command;
+
+import java.util.Stack;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contention benchmark: every thread pushes commands and undoes them on one shared history.
+ * Compares the lock-free CommandHistory with the synchronized java.util.Stack it replaced.
+ * Note that undo() is not a plain pop: it moves the entry to the redo stack, which the next push clears again.
+ * The "Stack+redo" row does the same with two synchronized stacks, that is the like for like comparison;
+ * the plain Stack row only pops.
+ */
+public class CommandHistoryBenchmark {
+    private static final int OPS_PER_THREAD = 2_000_000;
+
+    interface History {
+        void push(Command c);
+        Command pop();
+    }
+
+    static final class NoopCommand extends Command {
+        NoopCommand() {
+            super(null);
+        }
+
+        @Override
+        public boolean execute() {
+            return true;
+        }
+    }
+
+    static double opsPerSecond(History history, int threads) throws InterruptedException {
+        Command command = new NoopCommand();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicLong popped = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long hits = 0;
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    history.push(command);
+                    if ((i & 1) == 1 && history.pop() != null) hits++;
+                }
+                popped.addAndGet(hits);
+                done.countDown();
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        return (OPS_PER_THREAD * 1.5 * threads) / elapsed * 1_000_000_000L;
+    }
+
+    static History stack() {
+        Stack<Command> stack = new Stack<>();
+        return new History() {
+            public void push(Command c) { stack.push(c); }
+            public Command pop() { return stack.isEmpty() ? null : stack.pop(); }
+        };
+    }
+
+    // undo/redo semantics of CommandHistory on top of java.util.Stack
+    static History stackWithRedo() {
+        Stack<Command> undo = new Stack<>();
+        Stack<Command> redo = new Stack<>();
+        return new History() {
+            public synchronized void push(Command c) {
+                redo.clear();
+                undo.push(c);
+            }
+
+            public synchronized Command pop() {
+                if (undo.isEmpty()) return null;
+                return redo.push(undo.pop());
+            }
+        };
+    }
+
+    static History lockFree() {
+        CommandHistory history = new CommandHistory(Long.MAX_VALUE);
+        return new History() {
+            public void push(Command c) { history.push(c); }
+            public Command pop() { return history.undo(); }
+        };
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : new int[]{1, 2, cores, cores * 2}) {
+            opsPerSecond(stack(), threads);
+            opsPerSecond(stackWithRedo(), threads);
+            opsPerSecond(lockFree(), threads);
+            System.out.printf("threads=%d Stack     : %.0f ops/s%n", threads, opsPerSecond(stack(), threads));
+            System.out.printf("threads=%d Stack+redo: %.0f ops/s%n", threads, opsPerSecond(stackWithRedo(), threads));
+            System.out.printf("threads=%d lock-free : %.0f ops/s%n", threads, opsPerSecond(lockFree(), threads));
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package command;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary journal of the edits commands make to a TextBuffer, used to recover a session after a crash.
+ *
+ * Every executed, undone or redone command is written as the edit it applied: at offset, removed was replaced by inserted.
+ * Records are [int payload length][int crc32][int offset][int n][n bytes removed][int m][m bytes inserted], strings in UTF-8.
+ * Appends go to an in-memory buffer that is written and fsynced by a background group commit every commitIntervalMillis,
+ * so many edits share one fsync.
+ *
+ * Every snapshotInterval records the whole buffer is written to a snapshot and a new journal generation is started,
+ * recovery then loads the latest snapshot and replays only the journal written after it.
+ */
+class CommandJournal implements AutoCloseable {
+    private static final int HEADER_BYTES = 8;
+    private static final String SNAPSHOT = "snapshot.bin";
+
+    private final Path directory;
+    private final int snapshotInterval;
+    private final ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService committer;
+    private long generation;
+    private FileChannel channel;
+    private int recordsSinceSnapshot;
+
+    CommandJournal(Path directory, long commitIntervalMillis, int snapshotInterval) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.snapshotInterval = snapshotInterval;
+        this.generation = readSnapshotGeneration();
+        deleteStaleFiles();
+        this.channel = FileChannel.open(journalFile(generation),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        this.channel.position(validLength(channel));
+        this.committer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "command-journal-commit");
+            t.setDaemon(true);
+            return t;
+        });
+        this.committer.scheduleWithFixedDelay(this::commitQuietly, commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    CommandJournal(Path directory) throws IOException {
+        this(directory, 100, 10_000);
+    }
+
+    synchronized void append(int offset, String removed, String inserted) {
+        byte[] removedBytes = removed.getBytes(StandardCharsets.UTF_8);
+        byte[] insertedBytes = inserted.getBytes(StandardCharsets.UTF_8);
+        int payload = 12 + removedBytes.length + insertedBytes.length;
+        ByteBuffer record = HEADER_BYTES + payload <= pending.capacity() ? pending : ByteBuffer.allocate(HEADER_BYTES + payload);
+        try {
+            if (record == pending && pending.remaining() < HEADER_BYTES + payload) {
+                writePending();
+            }
+            int start = record.position();
+            record.putInt(payload).putInt(0)
+                    .putInt(offset)
+                    .putInt(removedBytes.length).put(removedBytes)
+                    .putInt(insertedBytes.length).put(insertedBytes);
+            crc.reset();
+            crc.update(record.array(), start + HEADER_BYTES, payload);
+            record.putInt(start + 4, (int) crc.getValue());
+            if (record != pending) {
+                writePending();
+                record.flip();
+                while (record.hasRemaining()) channel.write(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        recordsSinceSnapshot++;
+    }
+
+    boolean shouldSnapshot() {
+        return recordsSinceSnapshot >= snapshotInterval;
+    }
+
+    // writes and fsyncs everything appended so far, the background committer calls this periodically
+    synchronized void commit() throws IOException {
+        writePending();
+        channel.force(false);
+    }
+
+    /**
+     * Saves the full buffer text and rolls over to a fresh journal generation.
+     * The snapshot is written to a temp file and moved into place, the old journal is deleted only after that,
+     * so a crash at any point leaves either the old snapshot with its journal or the new one.
+     */
+    synchronized void snapshot(TextBuffer buffer) throws IOException {
+        commit();
+        long next = generation + 1;
+        byte[] text = buffer.getText().getBytes(StandardCharsets.UTF_8);
+        Path tmp = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(12).putLong(next).putInt(text.length);
+            header.flip();
+            ByteBuffer body = ByteBuffer.wrap(text);
+            while (header.hasRemaining() || body.hasRemaining()) out.write(new ByteBuffer[]{header, body});
+            out.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        FileChannel old = channel;
+        channel = FileChannel.open(journalFile(next), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        old.close();
+        Files.deleteIfExists(journalFile(generation));
+        generation = next;
+        recordsSinceSnapshot = 0;
+    }
+
+    /**
+     * Restores the buffer from the latest snapshot and the journal written after it.
+     * Replay reads the journal through a memory mapping and stops at the first torn or corrupt record.
+     */
+    synchronized void recover(TextBuffer buffer) throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT);
+        String text = "";
+        if (Files.exists(snapshot)) {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(snapshot));
+            data.getLong();
+            int length = data.getInt();
+            text = new String(data.array(), data.position(), length, StandardCharsets.UTF_8);
+        }
+        buffer.replaceRange(text, 0, buffer.length());
+
+        commit();
+        MappedByteBuffer journal = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.position());
+        int records = 0;
+        while (nextRecordLength(journal) > 0) {
+            journal.getInt();
+            journal.getInt();
+            int offset = journal.getInt();
+            int removedLength = readString(journal).length();
+            String inserted = readString(journal);
+            buffer.replaceRange(inserted, offset, offset + removedLength);
+            records++;
+        }
+        recordsSinceSnapshot = records;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        committer.shutdown();
+        commit();
+        channel.close();
+    }
+
+    private void commitQuietly() {
+        try {
+            commit();
+        } catch (IOException e) {
+            System.err.println("Command journal commit failed: " + e.getMessage());
+        }
+    }
+
+    private void writePending() throws IOException {
+        pending.flip();
+        while (pending.hasRemaining()) channel.write(pending);
+        pending.clear();
+    }
+
+    // a crash between moving a snapshot into place and deleting the journal it replaces leaves that journal behind,
+    // as does one while the snapshot is still being written
+    private void deleteStaleFiles() throws IOException {
+        Files.deleteIfExists(directory.resolve(SNAPSHOT + ".tmp"));
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(directory, "journal-*.bin")) {
+            for (Path journal : journals) {
+                String name = journal.getFileName().toString();
+                try {
+                    long n = Long.parseLong(name.substring("journal-".length(), name.length() - ".bin".length()));
+                    if (n < generation) Files.delete(journal);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+    }
+
+    private Path journalFile(long generation) {
+        return directory.resolve("journal-" + generation + ".bin");
+    }
+
+    private long readSnapshotGeneration() throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (!Files.exists(snapshot)) return 0;
+        try (FileChannel in = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            while (header.hasRemaining() && in.read(header) >= 0) ;
+            header.flip();
+            return header.getLong();
+        }
+    }
+
+    // length of the intact prefix, anything after it is a torn write from a crash and gets overwritten
+    private long validLength(FileChannel file) throws IOException {
+        MappedByteBuffer data = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        int length;
+        while ((length = nextRecordLength(data)) > 0) {
+            data.position(data.position() + length);
+        }
+        file.truncate(data.position());
+        return data.position();
+    }
+
+    // size of the complete, checksummed record at the buffer's position, or 0 when there is none
+    private int nextRecordLength(ByteBuffer data) {
+        int start = data.position();
+        if (data.remaining() < HEADER_BYTES) return 0;
+        int payload = data.getInt(start);
+        if (payload < 12 || payload > data.remaining() - HEADER_BYTES) return 0;
+        ByteBuffer body = data.duplicate();
+        body.position(start + HEADER_BYTES).limit(start + HEADER_BYTES + payload);
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue() == data.getInt(start + 4) ? HEADER_BYTES + payload : 0;
+    }
+
+    private static String readString(ByteBuffer data) {
+        int length = data.getInt();
+        byte[] bytes = new byte[length];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,25 +1,111 @@
 package command;
 
 import javax.swing.*;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DocumentFilter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Stack;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 abstract class Command {
+    // rough per entry cost of the object headers and fields, used for the history memory budget
+    static final long ENTRY_OVERHEAD_BYTES = 64;
+
     public Editor editor;
-    private String backup;
+    // the change made by execute(): at offset, removed was replaced by inserted.
+    // only the diff is kept, not a copy of the whole document
+    private int offset;
+    private String removed = "";
+    private String inserted = "";
+    // System.nanoTime() of the latest change in this entry, see CommandHistory.pushOrMerge
+    private long changedAt;
 
     Command(Editor editor) {
         this.editor = editor;
     }
 
-    void backup() {
-        backup = editor.textField.getText();
+    void record(int offset, String removed, String inserted) {
+        this.offset = offset;
+        this.removed = removed;
+        this.inserted = inserted;
+        this.changedAt = System.nanoTime();
+    }
+
+    // discrete actions such as a paste keep an undo entry of their own, only typing is merged into bursts
+    boolean mergesIntoHistory() {
+        return false;
+    }
+
+    long changedAt() {
+        return changedAt;
+    }
+
+    // false, and the buffer left alone, when the text at offset is no longer what execute() put there,
+    // e.g. after an edit that did not go through a command
+    public boolean undo() {
+        if (!textAt(offset, inserted)) return false;
+        editor.buffer.replaceRange(removed, offset, offset + inserted.length());
+        return true;
+    }
+
+    public boolean redo() {
+        if (!textAt(offset, removed)) return false;
+        editor.buffer.replaceRange(inserted, offset, offset + removed.length());
+        return true;
+    }
+
+    private boolean textAt(int at, String text) {
+        return at + text.length() <= editor.buffer.length() && editor.buffer.getText(at, at + text.length()).equals(text);
+    }
+
+    // writes the edit as applied by execute()/redo(), or its inverse when reverse is set (undo)
+    void journal(CommandJournal journal, boolean reverse) {
+        if (reverse) {
+            journal.append(offset, inserted, removed);
+        } else {
+            journal.append(offset, removed, inserted);
+        }
+    }
+
+    // approximate heap held by this entry, strings are counted at 2 bytes per char
+    long footprint() {
+        return ENTRY_OVERHEAD_BYTES + 2L * (removed.length() + inserted.length());
     }
 
-    public void undo() {
-        editor.textField.setText(backup);
+    /**
+     * Folds the change made by next (executed right after this command) into this one, so both
+     * are undone as a single entry. Only commands of the same kind are merged, and only when next
+     * edits the text this command inserted or keeps deleting forward from the same offset.
+     */
+    boolean absorb(Command next) {
+        if (next.getClass() != getClass()) return false;
+        if (next.offset >= offset && next.offset + next.removed.length() <= offset + inserted.length()) {
+            int at = next.offset - offset;
+            inserted = inserted.substring(0, at) + next.inserted + inserted.substring(at + next.removed.length());
+            changedAt = next.changedAt;
+            return true;
+        }
+        if (next.offset == offset && inserted.isEmpty()) {
+            removed = removed + next.removed;
+            inserted = next.inserted;
+            changedAt = next.changedAt;
+            return true;
+        }
+        return false;
     }
 
     public abstract boolean execute();
@@ -37,7 +123,7 @@ class CopyCommand extends Command {
 
     @Override
     public boolean execute() {
-        editor.clipboard = editor.textField.getSelectedText();
+        editor.clipboard = editor.buffer.getSelectedText();
         return false;
     }
 }
@@ -51,8 +137,9 @@ class PasteCommand extends Command {
     public boolean execute() {
         if (editor.clipboard == null || editor.clipboard.isEmpty()) return false;
 
-        backup();
-        editor.textField.insert(editor.clipboard, editor.textField.getCaretPosition());
+        int caret = editor.buffer.getCaretPosition();
+        record(caret, "", editor.clipboard);
+        editor.buffer.insert(editor.clipboard, caret);
         return true;
     }
 }
@@ -65,40 +152,320 @@ class CutCommand extends Command {
 
     @Override
     public boolean execute() {
-        if (editor.textField.getSelectedText().isEmpty()) return false;
+        String selected = editor.buffer.getSelectedText();
+        if (selected == null || selected.isEmpty()) return false;
 
-        backup();
-        String source = editor.textField.getText();
-        editor.clipboard = editor.textField.getSelectedText();
-        editor.textField.setText(cutString(source));
+        int start = editor.buffer.getSelectionStart();
+        record(start, selected, "");
+        editor.clipboard = selected;
+        editor.buffer.replaceRange("", start, editor.buffer.getSelectionEnd());
         return true;
     }
+}
+
+// an edit typed straight into the text component, recorded after the fact so undo stays in sync with the text
+class TypingCommand extends Command {
+    TypingCommand(Editor editor, int offset, String removed, String inserted) {
+        super(editor);
+        record(offset, removed, inserted);
+    }
 
-    private String cutString(String source) {
-        String start = source.substring(0, editor.textField.getSelectionStart());
-        String end = source.substring(editor.textField.getSelectionEnd());
-        return start + end;
+    @Override
+    public boolean execute() {
+        return true;
+    }
+
+    @Override
+    boolean mergesIntoHistory() {
+        return true;
     }
 }
 
+class MacroCommand extends Command {
+    private final List<Command> commands;
+    private final List<Command> applied = new ArrayList<>();
+
+    public MacroCommand(Editor editor, List<Command> commands) {
+        super(editor);
+        this.commands = new ArrayList<>(commands);
+    }
+
+    // runs the commands in order, all or nothing: if one throws, the ones already applied are reverted.
+    // adjacent compatible edits are merged so undo and redo replay as few buffer mutations as possible
+    @Override
+    public boolean execute() {
+        try {
+            for (Command command : commands) {
+                if (!command.execute()) continue;
+                Command last = applied.isEmpty() ? null : applied.get(applied.size() - 1);
+                if (last == null || !last.absorb(command)) {
+                    applied.add(command);
+                }
+            }
+        } catch (RuntimeException e) {
+            undo();
+            applied.clear();
+            throw e;
+        }
+        return !applied.isEmpty();
+    }
+
+    // all or nothing like execute: if one step no longer applies, the steps already reverted are re-applied
+    @Override
+    public boolean undo() {
+        for (int i = applied.size() - 1; i >= 0; i--) {
+            if (!applied.get(i).undo()) {
+                for (int j = i + 1; j < applied.size(); j++) {
+                    applied.get(j).redo();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean redo() {
+        for (int i = 0; i < applied.size(); i++) {
+            if (!applied.get(i).redo()) {
+                for (int j = i - 1; j >= 0; j--) {
+                    applied.get(j).undo();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    void journal(CommandJournal journal, boolean reverse) {
+        if (reverse) {
+            for (int i = applied.size() - 1; i >= 0; i--) {
+                applied.get(i).journal(journal, true);
+            }
+        } else {
+            for (Command command : applied) {
+                command.journal(journal, false);
+            }
+        }
+    }
+
+    @Override
+    long footprint() {
+        long total = ENTRY_OVERHEAD_BYTES;
+        for (Command command : applied) {
+            total += command.footprint();
+        }
+        return total;
+    }
+
+    @Override
+    boolean absorb(Command next) {
+        return false;
+    }
+}
+
+/**
+ * Undo/redo stacks bounded by a memory budget, the oldest entries are evicted first.
+ * Both stacks are Treiber stacks (CAS on the head node), so commands can be pushed and undone from
+ * many threads without taking a lock. Each operation is atomic on its own, undo() and redo() move an
+ * entry between the stacks in two steps.
+ * The budget is a soft bound: eviction runs on one thread at a time and may briefly lag behind concurrent pushes,
+ * but the byte count stays exact, so the bound is restored by the next eviction.
+ */
 class CommandHistory {
-    private Stack<Command> history = new Stack<>();
+    static final long DEFAULT_BUDGET_BYTES = 16L * 1024 * 1024;
+    // edits further apart than this start a new undo entry even when they could be merged
+    static final long MERGE_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    private static final class Node {
+        final Command command;
+        // never changes once the node is on a stack, pops CAS head -> head.next and rely on that
+        final Node next;
+
+        Node(Command command, Node next) {
+            this.command = command;
+            this.next = next;
+        }
+    }
+
+    private final AtomicReference<Node> undo = new AtomicReference<>();
+    private final AtomicReference<Node> redo = new AtomicReference<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final long budgetBytes;
+
+    CommandHistory() {
+        this(DEFAULT_BUDGET_BYTES);
+    }
+
+    CommandHistory(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
 
+    // a new command invalidates everything that could have been redone
     public void push(Command c) {
-        history.push(c);
+        // plain read first so the common case (nothing to redo) does not write the shared head
+        if (redo.get() != null) {
+            for (Node n = redo.getAndSet(null); n != null; n = n.next) {
+                usedBytes.addAndGet(-n.command.footprint());
+            }
+        }
+        push(undo, c);
+        if (usedBytes.addAndGet(c.footprint()) > budgetBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Merges c into the latest command when both belong to one burst of typing: c merges into history,
+     * follows the latest change within MERGE_WINDOW_NANOS and Command.absorb allows it. Otherwise pushes it.
+     * The merge takes the latest entry off the stack and puts it back, so it is not atomic with
+     * respect to pushes from other threads; those just end up as separate entries.
+     */
+    public void pushOrMerge(Command c) {
+        if (!c.mergesIntoHistory()) {
+            push(c);
+            return;
+        }
+        Command top = pop(undo);
+        if (top == null) {
+            push(c);
+            return;
+        }
+        long before = top.footprint();
+        if (c.changedAt() - top.changedAt() <= MERGE_WINDOW_NANOS && top.absorb(c)) {
+            push(top);
+            usedBytes.addAndGet(-before);
+        } else {
+            push(undo, top);
+            push(c);
+        }
+    }
+
+    // moves the latest command to the redo stack and returns it, the caller reverts it
+    public Command undo() {
+        Command c = pop(undo);
+        if (c != null) push(redo, c);
+        return c;
+    }
+
+    // moves the latest undone command back to the undo stack and returns it, the caller re-applies it
+    public Command redo() {
+        Command c = pop(redo);
+        if (c != null) push(undo, c);
+        return c;
+    }
+
+    // drops both stacks, for when the document no longer matches the recorded edits
+    public void clear() {
+        for (Node n = undo.getAndSet(null); n != null; n = n.next) {
+            usedBytes.addAndGet(-n.command.footprint());
+        }
+        for (Node n = redo.getAndSet(null); n != null; n = n.next) {
+            usedBytes.addAndGet(-n.command.footprint());
+        }
+    }
+
+    public boolean isEmpty() { return undo.get() == null; }
+
+    public boolean canRedo() { return redo.get() != null; }
+
+    long usedBytes() { return usedBytes.get(); }
+
+    private static void push(AtomicReference<Node> stack, Command c) {
+        Node head;
+        do {
+            head = stack.get();
+        } while (!stack.compareAndSet(head, new Node(c, head)));
     }
 
-    public Command pop() {
-        return history.pop();
+    private static Command pop(AtomicReference<Node> stack) {
+        Node head;
+        do {
+            head = stack.get();
+            if (head == null) return null;
+        } while (!stack.compareAndSet(head, head.next));
+        return head.command;
     }
 
-    public boolean isEmpty() { return history.isEmpty(); }
+    /**
+     * Cuts the oldest part of the undo stack so that a quarter of the budget is free again,
+     * which keeps the O(depth) walk amortized over many pushes. The most recent command is always kept.
+     * Live nodes are never modified: the kept part is copied into a new chain which replaces the head by CAS,
+     * and the walk starts over if a push or undo got in between. Only after the CAS succeeds are the dropped
+     * entries subtracted, so each entry is counted out exactly once.
+     * Threads that find another eviction in progress just return.
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            long budget = budgetBytes - budgetBytes / 4;
+            for (Node n = redo.get(); n != null; n = n.next) {
+                budget -= n.command.footprint();
+            }
+            List<Command> kept = new ArrayList<>();
+            Node head, dropped;
+            do {
+                head = undo.get();
+                if (head == null) return;
+                kept.clear();
+                kept.add(head.command);
+                long keep = budget - head.command.footprint();
+                dropped = head.next;
+                while (dropped != null && keep - dropped.command.footprint() >= 0) {
+                    keep -= dropped.command.footprint();
+                    kept.add(dropped.command);
+                    dropped = dropped.next;
+                }
+                if (dropped == null) return;
+            } while (!undo.compareAndSet(head, chain(kept)));
+            for (Node n = dropped; n != null; n = n.next) {
+                usedBytes.addAndGet(-n.command.footprint());
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    // nodes for the commands, newest first
+    private static Node chain(List<Command> newestFirst) {
+        Node node = null;
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            node = new Node(newestFirst.get(i), node);
+        }
+        return node;
+    }
 }
 
 class Editor {
     public JTextArea textField;
+    public TextBuffer buffer;
     public String clipboard;
     private CommandHistory history = new CommandHistory();
+    private CommandJournal journal;
+    // set while a command changes the buffer, so those changes are not recorded again as typing
+    private boolean applying;
+
+    Editor() {
+    }
+
+    // headless editor, e.g. a RopeTextBuffer for server side use or tests
+    Editor(TextBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    // Swing editor whose text is restored from the journal by init() and whose edits are journaled from then on
+    Editor(CommandJournal journal) {
+        this.journal = journal;
+    }
+
+    // headless editor whose buffer is restored from the journal and whose edits are journaled from now on
+    Editor(TextBuffer buffer, CommandJournal journal) throws IOException {
+        this.buffer = buffer;
+        this.journal = journal;
+        journal.recover(buffer);
+    }
 
     public void init() {
         JFrame frame = new JFrame("Text editor (type & use buttons, Luke!)");
@@ -108,12 +475,33 @@ class Editor {
         content.setLayout(new BoxLayout(content, BoxLayout.Y_AXIS));
         textField = new JTextArea();
         textField.setLineWrap(true);
+        buffer = new SwingTextBuffer(textField);
+        if (journal != null) {
+            // before typing is recorded, replaying the journal must not be journaled again
+            try {
+                journal.recover(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            frame.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    try {
+                        journal.close();
+                    } catch (IOException ex) {
+                        System.err.println("Could not close the command journal: " + ex.getMessage());
+                    }
+                }
+            });
+        }
+        recordTyping();
         content.add(textField);
         JPanel buttons = new JPanel(new FlowLayout(FlowLayout.CENTER));
         JButton ctrlC = new JButton("Ctrl+C");
         JButton ctrlX = new JButton("Ctrl+X");
         JButton ctrlV = new JButton("Ctrl+V");
         JButton ctrlZ = new JButton("Ctrl+Z");
+        JButton ctrlY = new JButton("Ctrl+Y");
         Editor editor = this;
         ctrlC.addActionListener(new ActionListener() {
             @Override
@@ -139,28 +527,124 @@ class Editor {
                 undo();
             }
         });
+        ctrlY.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redo();
+            }
+        });
         buttons.add(ctrlC);
         buttons.add(ctrlX);
         buttons.add(ctrlV);
         buttons.add(ctrlZ);
+        buttons.add(ctrlY);
         content.add(buttons);
         frame.setSize(450, 200);
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
     }
 
-    private void executeCommand(Command command) {
-        if (command.execute()) {
-            history.push(command);
+    // typing, deleting and pasting with the keyboard change the document directly, a filter on the document
+    // turns each of those edits into a TypingCommand
+    void recordTyping() {
+        ((AbstractDocument) textField.getDocument()).setDocumentFilter(new DocumentFilter() {
+            @Override
+            public void insertString(FilterBypass fb, int offset, String text, AttributeSet attr) throws BadLocationException {
+                fb.insertString(offset, text, attr);
+                typed(offset, "", text);
+            }
+
+            @Override
+            public void remove(FilterBypass fb, int offset, int length) throws BadLocationException {
+                String removed = fb.getDocument().getText(offset, length);
+                fb.remove(offset, length);
+                typed(offset, removed, "");
+            }
+
+            @Override
+            public void replace(FilterBypass fb, int offset, int length, String text, AttributeSet attrs) throws BadLocationException {
+                String removed = fb.getDocument().getText(offset, length);
+                fb.replace(offset, length, text, attrs);
+                typed(offset, removed, text == null ? "" : text);
+            }
+        });
+    }
+
+    private void typed(int offset, String removed, String inserted) {
+        if (applying || (removed.isEmpty() && inserted.isEmpty())) return;
+        Command command = new TypingCommand(this, offset, removed, inserted);
+        journal(command, false);
+        history.pushOrMerge(command);
+    }
+
+    void executeCommand(Command command) {
+        applying = true;
+        try {
+            if (command.execute()) {
+                journal(command, false);
+                history.pushOrMerge(command);
+            }
+        } finally {
+            applying = false;
+        }
+    }
+
+    // applies all commands as one undoable step, see MacroCommand
+    void executeBatch(List<Command> commands) {
+        Command macro = new MacroCommand(this, commands);
+        applying = true;
+        try {
+            if (macro.execute()) {
+                journal(macro, false);
+                history.push(macro);
+            }
+        } finally {
+            applying = false;
         }
     }
 
-    private void undo() {
+    void undo() {
         if (history.isEmpty()) return;
 
-        Command command = history.pop();
-        if (command != null) {
-            command.undo();
+        Command command = history.undo();
+        if (command == null) return;
+        applying = true;
+        try {
+            if (command.undo()) {
+                journal(command, true);
+            } else {
+                // the text changed behind the history's back, its offsets are meaningless now
+                history.clear();
+            }
+        } finally {
+            applying = false;
+        }
+    }
+
+    void redo() {
+        Command command = history.redo();
+        if (command == null) return;
+        applying = true;
+        try {
+            if (command.redo()) {
+                journal(command, false);
+            } else {
+                history.clear();
+            }
+        } finally {
+            applying = false;
+        }
+    }
+
+    private void journal(Command command, boolean reverse) {
+        if (journal == null) return;
+        command.journal(journal, reverse);
+        if (journal.shouldSnapshot()) {
+            try {
+                journal.snapshot(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
     }
 }
@@ -212,8 +696,10 @@ class Editor {
  */
 
 public class Main {
-    public static void main(String[] args) {
-        Editor editor = new Editor();
+    // the journal lives in ~/.command-editor unless a directory is given as the first argument
+    public static void main(String[] args) throws IOException {
+        Path directory = args.length > 0 ? Paths.get(args[0]) : Paths.get(System.getProperty("user.home"), ".command-editor");
+        Editor editor = new Editor(new CommandJournal(directory));
         editor.init();
     }
 }
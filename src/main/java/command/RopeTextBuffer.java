@@ -0,0 +1,205 @@
+package command;
+
+/**
+ * Headless document backed by a rope: short string chunks kept in an implicit treap
+ * (a binary tree ordered by position, balanced by random priorities).
+ * Inserts and deletes split and merge the tree in O(log n) expected time instead of copying the whole text,
+ * small inserts are folded into an existing chunk when it has room.
+ * After an edit the caret sits at the end of the new text and the selection is cleared, like a text area.
+ */
+class RopeTextBuffer implements TextBuffer {
+    static final int MAX_CHUNK = 512;
+
+    private static final class Node {
+        String chunk;
+        final int priority;
+        int size; // chars in this subtree
+        Node left, right;
+
+        Node(String chunk, int priority) {
+            this.chunk = chunk;
+            this.priority = priority;
+            this.size = chunk.length();
+        }
+    }
+
+    private Node root;
+    private int seed = 0x2545F491;
+    private int selectionStart, selectionEnd;
+
+    RopeTextBuffer() {
+    }
+
+    RopeTextBuffer(String text) {
+        root = build(text);
+    }
+
+    @Override
+    public int length() {
+        return size(root);
+    }
+
+    @Override
+    public String getText() {
+        return getText(0, length());
+    }
+
+    @Override
+    public String getText(int start, int end) {
+        checkRange(start, end);
+        StringBuilder sb = new StringBuilder(end - start);
+        append(root, 0, start, end, sb);
+        return sb.toString();
+    }
+
+    @Override
+    public void insert(String text, int offset) {
+        replaceRange(text, offset, offset);
+    }
+
+    @Override
+    public void replaceRange(String text, int start, int end) {
+        checkRange(start, end);
+        if (start == end && text.length() <= MAX_CHUNK && root != null && insertInPlace(root, start, text)) {
+            select(start + text.length(), start + text.length());
+            return;
+        }
+        Node[] head = split(root, start);
+        Node[] tail = split(head[1], end - start);
+        root = merge(merge(head[0], build(text)), tail[1]);
+        select(start + text.length(), start + text.length());
+    }
+
+    @Override
+    public int getCaretPosition() {
+        return selectionEnd;
+    }
+
+    @Override
+    public void setCaretPosition(int position) {
+        select(position, position);
+    }
+
+    @Override
+    public int getSelectionStart() {
+        return selectionStart;
+    }
+
+    @Override
+    public int getSelectionEnd() {
+        return selectionEnd;
+    }
+
+    @Override
+    public void select(int start, int end) {
+        checkRange(start, end);
+        selectionStart = start;
+        selectionEnd = end;
+    }
+
+    @Override
+    public String toString() {
+        return getText();
+    }
+
+    private void checkRange(int start, int end) {
+        if (start < 0 || end < start || end > length()) {
+            throw new IndexOutOfBoundsException("range [" + start + ", " + end + ") of " + length());
+        }
+    }
+
+    private static int size(Node n) {
+        return n == null ? 0 : n.size;
+    }
+
+    private static void update(Node n) {
+        n.size = size(n.left) + n.chunk.length() + size(n.right);
+    }
+
+    // xorshift, the treap only needs cheap well spread priorities
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private Node build(String text) {
+        Node result = null;
+        for (int i = 0; i < text.length(); i += MAX_CHUNK) {
+            result = merge(result, new Node(text.substring(i, Math.min(text.length(), i + MAX_CHUNK)), nextPriority()));
+        }
+        return result;
+    }
+
+    // adds text to the chunk holding offset if that chunk stays under MAX_CHUNK, fixing sizes on the way back up
+    private static boolean insertInPlace(Node n, int offset, String text) {
+        if (n == null) return false;
+        int leftSize = size(n.left);
+        boolean done;
+        if (offset < leftSize) {
+            done = insertInPlace(n.left, offset, text);
+        } else if (offset <= leftSize + n.chunk.length()) {
+            if (n.chunk.length() + text.length() > MAX_CHUNK) return false;
+            int at = offset - leftSize;
+            n.chunk = n.chunk.substring(0, at) + text + n.chunk.substring(at);
+            done = true;
+        } else {
+            done = insertInPlace(n.right, offset - leftSize - n.chunk.length(), text);
+        }
+        if (done) n.size += text.length();
+        return done;
+    }
+
+    // splits into [first k chars, rest], cutting a chunk in two when k falls inside it
+    private static Node[] split(Node n, int k) {
+        if (n == null) return new Node[]{null, null};
+        int leftSize = size(n.left);
+        int chunkEnd = leftSize + n.chunk.length();
+        if (k <= leftSize) {
+            Node[] parts = split(n.left, k);
+            n.left = parts[1];
+            update(n);
+            return new Node[]{parts[0], n};
+        }
+        if (k >= chunkEnd) {
+            Node[] parts = split(n.right, k - chunkEnd);
+            n.right = parts[0];
+            update(n);
+            return new Node[]{n, parts[1]};
+        }
+        int at = k - leftSize;
+        // the right half takes over n's priority so the heap order of n's right subtree still holds
+        Node rest = new Node(n.chunk.substring(at), n.priority);
+        rest.right = n.right;
+        update(rest);
+        n.chunk = n.chunk.substring(0, at);
+        n.right = null;
+        update(n);
+        return new Node[]{n, rest};
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+
+    private static void append(Node n, int base, int start, int end, StringBuilder sb) {
+        if (n == null || start >= base + n.size || end <= base) return;
+        int leftSize = size(n.left);
+        append(n.left, base, start, end, sb);
+        int chunkStart = base + leftSize;
+        int from = Math.max(start, chunkStart);
+        int to = Math.min(end, chunkStart + n.chunk.length());
+        if (from < to) sb.append(n.chunk, from - chunkStart, to - chunkStart);
+        append(n.right, chunkStart + n.chunk.length(), start, end, sb);
+    }
+}
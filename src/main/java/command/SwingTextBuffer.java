@@ -0,0 +1,71 @@
+package command;
+
+import javax.swing.JTextArea;
+import javax.swing.text.BadLocationException;
+
+class SwingTextBuffer implements TextBuffer {
+    private final JTextArea textArea;
+
+    SwingTextBuffer(JTextArea textArea) {
+        this.textArea = textArea;
+    }
+
+    @Override
+    public int length() {
+        return textArea.getDocument().getLength();
+    }
+
+    @Override
+    public String getText() {
+        return textArea.getText();
+    }
+
+    @Override
+    public String getText(int start, int end) {
+        try {
+            return textArea.getText(start, end - start);
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void insert(String text, int offset) {
+        textArea.insert(text, offset);
+    }
+
+    @Override
+    public void replaceRange(String text, int start, int end) {
+        textArea.replaceRange(text, start, end);
+    }
+
+    @Override
+    public int getCaretPosition() {
+        return textArea.getCaretPosition();
+    }
+
+    @Override
+    public void setCaretPosition(int position) {
+        textArea.setCaretPosition(position);
+    }
+
+    @Override
+    public int getSelectionStart() {
+        return textArea.getSelectionStart();
+    }
+
+    @Override
+    public int getSelectionEnd() {
+        return textArea.getSelectionEnd();
+    }
+
+    @Override
+    public void select(int start, int end) {
+        textArea.select(start, end);
+    }
+
+    @Override
+    public String getSelectedText() {
+        return textArea.getSelectedText();
+    }
+}
@@ -0,0 +1,31 @@
+package command;
+
+// The document the commands operate on. Swing and headless editors plug in different implementations.
+interface TextBuffer {
+    int length();
+
+    String getText();
+
+    String getText(int start, int end);
+
+    void insert(String text, int offset);
+
+    void replaceRange(String text, int start, int end);
+
+    int getCaretPosition();
+
+    void setCaretPosition(int position);
+
+    int getSelectionStart();
+
+    int getSelectionEnd();
+
+    void select(int start, int end);
+
+    // null when nothing is selected, like JTextArea
+    default String getSelectedText() {
+        int start = getSelectionStart();
+        int end = getSelectionEnd();
+        return start == end ? null : getText(start, end);
+    }
+}
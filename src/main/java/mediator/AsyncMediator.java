@@ -0,0 +1,131 @@
+package mediator;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mediator decorator that queues events and hands them to the real mediator in batches on a dedicated thread,
+ * so components never run handlers on their own thread.
+ * Before a batch runs, events that cancel out are coalesced:
+ * - an even number of CHECK events from one checkbox toggles it back, so none is delivered; an odd number delivers one
+ * - a burst of KEYPRESS events from one textbox is delivered once
+ * - CLICK events are always delivered one by one and are barriers: only events between two clicks are merged
+ * Coalesced events keep the position of their first occurrence.
+ *
+ * Handlers read component state when they run. A click acts on the form as it is when the button is pressed,
+ * so notify returns for a CLICK only after it has been handled; toggles and keypresses stay fire and forget.
+ */
+class AsyncMediator implements Mediator, AutoCloseable {
+    private static final class Pending {
+        final Component sender;
+        final Event event;
+
+        Pending(Component sender, Event event) {
+            this.sender = sender;
+            this.event = event;
+        }
+    }
+
+    private final Mediator target;
+    private final ExecutorService executor;
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile Thread thread;
+
+    AsyncMediator(Mediator target) {
+        this.target = target;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "async-mediator");
+            t.setDaemon(true);
+            thread = t;
+            return t;
+        });
+    }
+
+    @Override
+    public void notify(Component sender, Event event) {
+        queue.add(new Pending(sender, event));
+        // a handler clicking a button runs on the mediator thread already, waiting there would deadlock
+        if (event == Event.CLICK && Thread.currentThread() != thread) {
+            flush();
+        } else if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    // waits until every event queued so far has been handled
+    void flush() {
+        try {
+            executor.submit(this::drain).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        executor.shutdown();
+    }
+
+    private void drain() {
+        scheduled.set(false);
+        List<Pending> batch = new ArrayList<>();
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            batch.add(pending);
+        }
+        if (batch.isEmpty()) return;
+        for (Pending p : coalesce(batch)) {
+            target.notify(p.sender, p.event);
+        }
+    }
+
+    private static List<Pending> coalesce(List<Pending> batch) {
+        List<Pending> result = new ArrayList<>(batch.size());
+        int from = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.get(i).event == Event.CLICK) {
+                coalesce(batch.subList(from, i), result);
+                result.add(batch.get(i));
+                from = i + 1;
+            }
+        }
+        coalesce(batch.subList(from, batch.size()), result);
+        return result;
+    }
+
+    // merges the events of a run without clicks into result
+    private static void coalesce(List<Pending> run, List<Pending> result) {
+        Map<Component, int[]> counts = new IdentityHashMap<>();
+        for (Pending p : run) {
+            counts.computeIfAbsent(p.sender, c -> new int[Event.COUNT])[p.event.ordinal()]++;
+        }
+        for (Pending p : run) {
+            int[] perEvent = counts.get(p.sender);
+            int n = perEvent[p.event.ordinal()];
+            switch (p.event) {
+                case CHECK:
+                    if (n % 2 == 1) result.add(p);
+                    perEvent[p.event.ordinal()] = 0;
+                    break;
+                case KEYPRESS:
+                    if (n > 0) result.add(p);
+                    perEvent[p.event.ordinal()] = 0;
+                    break;
+                default:
+                    result.add(p);
+            }
+        }
+    }
+}
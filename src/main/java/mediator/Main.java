@@ -1,17 +1,51 @@
 package mediator;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 // The mediator interface declares a method used by components
 // to notify the mediator about various events. The mediator may
 // react to these events and pass the execution to other
 // components.
 interface Mediator {
-    void notify(Component sender, String event);
+    void notify(Component sender, Event event);
+
+    // string events from older callers, prefer the typed overload. Unknown events are ignored, as they always were
+    default void notify(Component sender, String event) {
+        Event typed;
+        try {
+            typed = Event.valueOf(event.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        notify(sender, typed);
+    }
+}
+
+// The events components can raise. Typed events let the mediator
+// dispatch through a table instead of comparing strings.
+enum Event {
+    CLICK,
+    KEYPRESS,
+    CHECK;
+
+    static final int COUNT = values().length;
+}
+
+// A component event handler, resolved once when the mediator is built.
+interface Handler {
+    void handle();
 }
 
 // The concrete mediator class. The intertwined web of
 // connections between individual components has been untangled
 // and moved into the mediator.
-class AuthenticationDialog implements Mediator {
+class AuthenticationDialog implements Mediator, AutoCloseable {
     private String title;
     private Checkbox loginOrRegisterChkBx;
     private Textbox loginUsername, loginPassword;
@@ -21,7 +55,31 @@ class AuthenticationDialog implements Mediator {
     private Checkbox registerToPhoneNotificationsChkBx;
     private Textbox phoneNumberTxtField;
 
+    // handlers indexed by component id * Event.COUNT + event ordinal, empty slots are events nobody handles
+    private final Handler[] handlers;
+    // registered components by id, a component from another dialog may carry the same id
+    private Component[] components = new Component[0];
+    private int componentCount;
+    // what components notify: this dialog itself, or an AsyncMediator in front of it
+    private final Mediator channel;
+    // null until the first login or registration when no store was given, see userStore()
+    private UserStore userStore;
+    // the last login or registration, hashing runs on the store's threads
+    private volatile CompletableFuture<Boolean> pendingAuthentication = CompletableFuture.completedFuture(true);
+
     public AuthenticationDialog() {
+        this(false);
+    }
+
+    // uses UserStore.getDefault(), opened on the first login or registration
+    public AuthenticationDialog(boolean async) {
+        this(async, null);
+    }
+
+    // async dialogs queue component events and run the handlers in coalesced batches, see AsyncMediator
+    public AuthenticationDialog(boolean async, UserStore userStore) {
+        this.channel = async ? new AsyncMediator(this) : this;
+        this.userStore = userStore;
         // Create all component objects by passing the current
         // mediator into their constructors to establish links.
         this.loginOrRegisterChkBx = new Checkbox();
@@ -35,74 +93,174 @@ class AuthenticationDialog implements Mediator {
         this.registerToPhoneNotificationsChkBx = new Checkbox();
         this.phoneNumberTxtField = new Textbox();
 
-        this.loginOrRegisterChkBx.setMediator(this);
-        this.loginUsername.setMediator(this);
-        this.loginPassword.setMediator(this);
-        this.registrationUsername.setMediator(this);
-        this.registrationPassword.setMediator(this);
-        this.registrationEmail.setMediator(this);
-        this.okBtn.setMediator(this);
-        this.cancelBtn.setMediator(this);
-        this.registerToPhoneNotificationsChkBx.setMediator(this);
-        this.phoneNumberTxtField.setMediator(this);
+        register(this.loginOrRegisterChkBx);
+        register(this.loginUsername);
+        register(this.loginPassword);
+        register(this.registrationUsername);
+        register(this.registrationPassword);
+        register(this.registrationEmail);
+        register(this.okBtn);
+        register(this.cancelBtn);
+        register(this.registerToPhoneNotificationsChkBx);
+        register(this.phoneNumberTxtField);
+
+        this.handlers = new Handler[componentCount * Event.COUNT];
+        on(loginOrRegisterChkBx, Event.CHECK, this::onLoginOrRegisterChecked);
+        on(okBtn, Event.CLICK, this::onOkClicked);
+        on(registerToPhoneNotificationsChkBx, Event.CHECK, this::onPhoneNotificationsChecked);
+    }
+
+    private void register(Component component) {
+        component.setMediator(channel);
+        component.setId(componentCount);
+        components = Arrays.copyOf(components, componentCount + 1);
+        components[componentCount++] = component;
+    }
+
+    private void on(Component component, Event event, Handler handler) {
+        handlers[component.getId() * Event.COUNT + event.ordinal()] = handler;
     }
 
     // When something happens with a component, it notifies the
     // mediator. Upon receiving a notification, the mediator may
     // do something on its own or pass the request to another
     // component.
-    public void notify(Component sender, String event) {
-        if (sender == loginOrRegisterChkBx && event.equals("check")) {
-            if (loginOrRegisterChkBx.isChecked()) {
-                title = "Log in";
-                // 1. Show login form components.
-                // 2. Hide registration form components.
-            } else {
-                title = "Register";
-                // 1. Show registration form components.
-                // 2. Hide login form components
-            }
+    public void notify(Component sender, Event event) {
+        int id = sender.getId();
+        if (id < 0 || id >= componentCount || components[id] != sender) return;
+        int slot = id * Event.COUNT + event.ordinal();
+        Handler handler = handlers[slot];
+        if (handler != null) {
+            handler.handle();
         }
+    }
 
-        if (sender == okBtn && event.equals("click")) {
-            if (loginOrRegisterChkBx.isChecked()) {
-                // Try to find a user using login credentials.
-                boolean found = true;
-                if (!found) {
-                    // Show an error message above the login
-                    // field.
-                } else {
-                    System.out.println("User Found with the given credentials. Logging in... ");
-                }
-            } else {
-                // 1. Create a user account using data from the
-                // registration fields.
-                // 2. Log that user in.
-                // ...
-                System.out.println("No Registered User Found. Signing up...");
-            }
+    // waits for queued events and the last login or registration to be handled
+    public void flush() {
+        if (channel instanceof AsyncMediator) {
+            ((AsyncMediator) channel).flush();
         }
+        pendingAuthentication.join();
+    }
 
-        if (sender == registerToPhoneNotificationsChkBx && event.equals("check")) {
-            if (registerToPhoneNotificationsChkBx.isChecked()) {
-                // Show phone number field
-                System.out.println("Phone number field is now visible.");
-            } else {
-                // Hide phone number field
-                System.out.println("Phone number field is now hidden.");
-            }
+    // stops the event thread of an async dialog after handling what is queued, the user store stays open
+    @Override
+    public void close() {
+        if (channel instanceof AsyncMediator) {
+            ((AsyncMediator) channel).close();
+        }
+        pendingAuthentication.join();
+    }
+
+    private void onLoginOrRegisterChecked() {
+        if (loginOrRegisterChkBx.isChecked()) {
+            title = "Log in";
+            // 1. Show login form components.
+            // 2. Hide registration form components.
+        } else {
+            title = "Register";
+            // 1. Show registration form components.
+            // 2. Hide login form components
+        }
+    }
+
+    private void onOkClicked() {
+        if (loginOrRegisterChkBx.isChecked()) {
+            // Try to find a user using login credentials.
+            pendingAuthentication = userStore().authenticate(loginUsername.getText(), loginPassword.getText())
+                    .handle((found, error) -> {
+                        if (error != null || !found) {
+                            // Show an error message above the login
+                            // field.
+                            System.out.println("No user found with the given credentials.");
+                            return false;
+                        }
+                        System.out.println("User Found with the given credentials. Logging in... ");
+                        return true;
+                    });
+        } else {
+            // 1. Create a user account using data from the
+            // registration fields.
+            // 2. Log that user in.
+            pendingAuthentication = userStore().register(registrationUsername.getText(), registrationEmail.getText(),
+                            registrationPassword.getText())
+                    .handle((created, error) -> {
+                        // the outcome is shown here, so flush() never rethrows it
+                        if (error != null) {
+                            System.out.println("Could not register: " + rootCause(error).getMessage());
+                            return false;
+                        }
+                        if (!created) {
+                            System.out.println("Username already taken.");
+                            return false;
+                        }
+                        System.out.println("No Registered User Found. Signing up...");
+                        return true;
+                    });
+        }
+    }
+
+    private UserStore userStore() {
+        if (userStore == null) userStore = UserStore.getDefault();
+        return userStore;
+    }
+
+    private static Throwable rootCause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private void onPhoneNotificationsChecked() {
+        if (registerToPhoneNotificationsChkBx.isChecked()) {
+            // Show phone number field
+            System.out.println("Phone number field is now visible.");
+        } else {
+            // Hide phone number field
+            System.out.println("Phone number field is now hidden.");
         }
     }
 
+    String getTitle() { return title; }
+
+    Checkbox getLoginOrRegisterChkBx() { return loginOrRegisterChkBx; }
+
+    Textbox getLoginUsername() { return loginUsername; }
+
+    Textbox getLoginPassword() { return loginPassword; }
+
+    Textbox getRegistrationUsername() { return registrationUsername; }
+
+    Textbox getRegistrationPassword() { return registrationPassword; }
+
+    Textbox getRegistrationEmail() { return registrationEmail; }
+
+    Button getOkBtn() { return okBtn; }
+
+    Button getCancelBtn() { return cancelBtn; }
+
+    Checkbox getRegisterToPhoneNotificationsChkBx() { return registerToPhoneNotificationsChkBx; }
+
+    Textbox getPhoneNumberTxtField() { return phoneNumberTxtField; }
+
     public void simulate() {
         // Example interaction
         this.registerToPhoneNotificationsChkBx.check();
         this.registerToPhoneNotificationsChkBx.check();
         this.registerToPhoneNotificationsChkBx.check();
 
+        // register (the checkbox starts unchecked, i.e. in registration mode)
+        String username = "user" + System.identityHashCode(this);
+        this.registrationUsername.setText(username);
+        this.registrationEmail.setText(username + "@example.com");
+        this.registrationPassword.setText("secret");
+        this.okBtn.click();
+        flush();
 
+        // then log in with the same credentials
         this.loginOrRegisterChkBx.check();
+        this.loginUsername.setText(username);
+        this.loginPassword.setText("secret");
         this.okBtn.click();
+        flush();
     }
 
 }
@@ -114,6 +272,9 @@ class AuthenticationDialog implements Mediator {
 interface Component {
     void setMediator(Mediator mediator);
     String getName();
+    // slot assigned by the mediator, used to look up handlers without comparisons
+    void setId(int id);
+    int getId();
 }
 
 // Concrete components don't talk to each other. They have only
@@ -121,9 +282,10 @@ interface Component {
 // the mediator.
 class Button implements Component {
     private Mediator mediator;
+    private int id;
 
     public void click() {
-        mediator.notify(this, "click");
+        mediator.notify(this, Event.CLICK);
     }
 
     @Override
@@ -135,13 +297,35 @@ class Button implements Component {
     public String getName() {
         return "Button";
     }
+
+    @Override
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
 }
 
 class Textbox implements Component {
     private Mediator mediator;
+    private int id;
+    private String text = "";
 
     public void keypress() {
-        mediator.notify(this, "keypress");
+        mediator.notify(this, Event.KEYPRESS);
+    }
+
+    // replaces the content as if it had been typed
+    public void setText(String text) {
+        this.text = text;
+        keypress();
+    }
+
+    public String getText() {
+        return text;
     }
 
     @Override
@@ -153,15 +337,26 @@ class Textbox implements Component {
     public String getName() {
         return "TextBox";
     }
+
+    @Override
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
 }
 
 class Checkbox implements Component {
     private Mediator mediator;
+    private int id;
     private boolean isChecked;
 
     public void check() {
         this.isChecked = !isChecked;
-        mediator.notify(this, "check");
+        mediator.notify(this, Event.CHECK);
     }
 
     @Override
@@ -177,10 +372,20 @@ class Checkbox implements Component {
     public String getName() {
         return "CheckBox";
     }
+
+    @Override
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
 }
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Checkbox loginOrRegisterChkBx = new Checkbox();
         Textbox loginUsername = new Textbox();
         Textbox loginPassword = new Textbox();
@@ -190,8 +395,19 @@ public class Main {
         Button okBtn = new Button();
         Button cancelBtn = new Button();
 
-        // mediator
-        AuthenticationDialog authenticationDialog = new AuthenticationDialog();
-        authenticationDialog.simulate();
+        // the demo registers throwaway users, keep them out of the default store
+        Path users = Files.createTempFile("users", ".db");
+        try (UserStore userStore = new UserStore(users)) {
+            // mediator
+            AuthenticationDialog authenticationDialog = new AuthenticationDialog(false, userStore);
+            authenticationDialog.simulate();
+
+            // same interaction, the three phone notification toggles coalesce into one
+            try (AuthenticationDialog asyncDialog = new AuthenticationDialog(true, userStore)) {
+                asyncDialog.simulate();
+            }
+        } finally {
+            Files.deleteIfExists(users);
+        }
     }
 }
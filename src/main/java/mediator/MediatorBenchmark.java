@@ -0,0 +1,63 @@
+package mediator;
+
+/**
+ * Dispatch cost of the typed handler table in AuthenticationDialog against the previous
+ * chain of sender == x && event.equals("...") checks, reproduced here as StringChainDialog.
+ * The event mix is keystroke heavy (nine keypresses per checkbox toggle) and avoids the handlers that print.
+ */
+public class MediatorBenchmark {
+    private static final int WARMUP = 5_000_000;
+    private static final int ITERATIONS = 50_000_000;
+
+    static class StringChainDialog {
+        String title;
+        Checkbox loginOrRegisterChkBx = new Checkbox();
+        Button okBtn = new Button();
+        Checkbox registerToPhoneNotificationsChkBx = new Checkbox();
+        int okClicks, phoneToggles;
+
+        void notify(Component sender, String event) {
+            if (sender == loginOrRegisterChkBx && event.equals("check")) {
+                title = loginOrRegisterChkBx.isChecked() ? "Log in" : "Register";
+            }
+            if (sender == okBtn && event.equals("click")) {
+                okClicks++;
+            }
+            if (sender == registerToPhoneNotificationsChkBx && event.equals("check")) {
+                phoneToggles++;
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        AuthenticationDialog dialog = new AuthenticationDialog();
+        Textbox textbox = dialog.getLoginUsername();
+        Checkbox checkbox = dialog.getLoginOrRegisterChkBx();
+
+        StringChainDialog legacy = new StringChainDialog();
+        Textbox legacyTextbox = new Textbox();
+        Checkbox legacyCheckbox = legacy.loginOrRegisterChkBx;
+        // the string chain compares the event string of every notification, so build them the way components did
+        String keypress = new String("keypress");
+        String check = new String("check");
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                if (i == WARMUP) start = System.nanoTime();
+                if (i % 10 == 0) legacy.notify(legacyCheckbox, check);
+                else legacy.notify(legacyTextbox, keypress);
+            }
+            double legacyRate = ITERATIONS / ((System.nanoTime() - start) / 1e9);
+
+            for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                if (i == WARMUP) start = System.nanoTime();
+                if (i % 10 == 0) dialog.notify(checkbox, Event.CHECK);
+                else dialog.notify(textbox, Event.KEYPRESS);
+            }
+            double tableRate = ITERATIONS / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("string chain: %.0f events/s, handler table: %.0f events/s (%s/%s)%n",
+                    legacyRate, tableRate, legacy.title, dialog.getTitle());
+        }
+    }
+}
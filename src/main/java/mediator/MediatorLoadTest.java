@@ -0,0 +1,120 @@
+package mediator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Headless load test for mediator driven forms: builds many AuthenticationDialogs and fires a scripted
+ * event sequence at their components from several threads, then reports events per second and notify latency
+ * percentiles. Each thread owns its own dialogs, like a UI thread owns its forms.
+ *
+ * The script types into the login fields and toggles the login/register checkbox, which exercises the
+ * Component -> Mediator dispatch path without console output or password hashing.
+ * With async set the dialogs queue their events on an AsyncMediator, one event thread per dialog: notify latency
+ * is then the cost of queueing, and each driver flushes its dialogs before the clock stops so the rate includes
+ * handling. All dialogs are closed at the end.
+ * Args: [dialogs] [threads] [rounds] [async]
+ */
+public class MediatorLoadTest {
+    // one in SAMPLE_EVERY events is timed, keeping the samples small and the timer overhead out of the rate
+    private static final int SAMPLE_EVERY = 16;
+
+    interface Step {
+        void fire(AuthenticationDialog dialog);
+    }
+
+    static final Step[] SCRIPT = {
+            d -> d.getLoginOrRegisterChkBx().check(),
+            d -> d.getLoginUsername().keypress(),
+            d -> d.getLoginUsername().keypress(),
+            d -> d.getLoginUsername().keypress(),
+            d -> d.getLoginPassword().keypress(),
+            d -> d.getLoginPassword().keypress(),
+            d -> d.getLoginOrRegisterChkBx().check(),
+            d -> d.getRegistrationEmail().keypress(),
+    };
+
+    public static void main(String[] args) throws InterruptedException {
+        int dialogCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        boolean async = args.length > 3 && Boolean.parseBoolean(args[3]);
+
+        List<List<AuthenticationDialog>> perThread = new ArrayList<>();
+        for (int t = 0; t < threads; t++) perThread.add(new ArrayList<>());
+        for (int i = 0; i < dialogCount; i++) {
+            perThread.get(i % threads).add(new AuthenticationDialog(async));
+        }
+
+        long[][] samples = new long[threads][];
+        int[] sampleCounts = new int[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            List<AuthenticationDialog> dialogs = perThread.get(t);
+            long events = (long) dialogs.size() * rounds * SCRIPT.length;
+            samples[id] = new long[(int) (events / SAMPLE_EVERY) + 1];
+            new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long[] mine = samples[id];
+                int n = 0;
+                long counter = 0;
+                for (int r = 0; r < rounds; r++) {
+                    for (AuthenticationDialog dialog : dialogs) {
+                        for (Step step : SCRIPT) {
+                            if (++counter % SAMPLE_EVERY == 0) {
+                                long begin = System.nanoTime();
+                                step.fire(dialog);
+                                mine[n++] = System.nanoTime() - begin;
+                            } else {
+                                step.fire(dialog);
+                            }
+                        }
+                    }
+                }
+                if (async) {
+                    for (AuthenticationDialog dialog : dialogs) dialog.flush();
+                }
+                sampleCounts[id] = n;
+                done.countDown();
+            }, "form-driver-" + t).start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        for (List<AuthenticationDialog> dialogs : perThread) {
+            for (AuthenticationDialog dialog : dialogs) dialog.close();
+        }
+
+        int total = 0;
+        for (int count : sampleCounts) total += count;
+        long[] all = new long[total];
+        int pos = 0;
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(samples[t], 0, all, pos, sampleCounts[t]);
+            pos += sampleCounts[t];
+        }
+        Arrays.sort(all);
+
+        long events = (long) dialogCount * rounds * SCRIPT.length;
+        System.out.printf("%d %s dialogs, %d threads, %d events in %.2fs: %.0f events/s%n",
+                dialogCount, async ? "async" : "sync", threads, events, seconds, events / seconds);
+        if (all.length == 0) return;
+        System.out.printf("notify latency p50=%dns p99=%dns p99.9=%dns max=%dns (%d samples)%n",
+                percentile(all, 0.5), percentile(all, 0.99), percentile(all, 0.999), all[all.length - 1], all.length);
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,267 @@
+package mediator;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * File-backed user store for the authentication dialog.
+ *
+ * Users are appended to a local file as [int length][username][email][salt][hash] records.
+ * A concurrent in-memory index maps every username to its record offset, so unknown usernames are rejected
+ * without touching the disk, and a bounded LRU cache keeps recently used records.
+ * Password hashing (PBKDF2) runs on the store's own thread pool, never on the caller's thread.
+ * Every registration is forced to disk before it completes.
+ */
+class UserStore implements AutoCloseable {
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int ITERATIONS = 10_000;
+    private static final int CACHE_CAPACITY = 10_000;
+    // where getDefault() keeps its users, overridable with -Dmediator.userStore=<file>
+    static final String DEFAULT_PATH_PROPERTY = "mediator.userStore";
+    private static final byte[] DUMMY_SALT = new byte[SALT_BYTES];
+    private static volatile UserStore instance = null;
+
+    static final class User {
+        final String username;
+        final String email;
+        final byte[] salt;
+        final byte[] hash;
+
+        User(String username, String email, byte[] salt, byte[] hash) {
+            this.username = username;
+            this.email = email;
+            this.salt = salt;
+            this.hash = hash;
+        }
+    }
+
+    // LRU split into segments, each guarded by its own lock, so lookups for different users rarely contend
+    private static final class LruCache<K, V> {
+        private final Map<K, V>[] segments;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        LruCache(int capacity, int segmentCount) {
+            int perSegment = Math.max(1, capacity / segmentCount);
+            segments = new Map[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                segments[i] = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                        return size() > perSegment;
+                    }
+                };
+            }
+        }
+
+        private Map<K, V> segment(K key) {
+            return segments[(key.hashCode() & 0x7fffffff) % segments.length];
+        }
+
+        V get(K key) {
+            Map<K, V> segment = segment(key);
+            synchronized (segment) {
+                return segment.get(key);
+            }
+        }
+
+        void put(K key, V value) {
+            Map<K, V> segment = segment(key);
+            synchronized (segment) {
+                segment.put(key, value);
+            }
+        }
+    }
+
+    private final FileChannel channel;
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    private final LruCache<String, User> cache = new LruCache<>(CACHE_CAPACITY, 16);
+    private final ExecutorService hashing;
+    private final SecureRandom random = new SecureRandom();
+
+    UserStore(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.hashing = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "user-store-hashing");
+            t.setDaemon(true);
+            return t;
+        });
+        loadIndex();
+    }
+
+    // shared store used by dialogs that are not given one, in ~/.mediator/users.db unless configured otherwise
+    public static UserStore getDefault() {
+        if (instance == null)
+            synchronized (UserStore.class) {
+                if (instance == null) {
+                    try {
+                        String configured = System.getProperty(DEFAULT_PATH_PROPERTY);
+                        Path file = configured != null ? Paths.get(configured)
+                                : Paths.get(System.getProperty("user.home"), ".mediator", "users.db");
+                        if (file.toAbsolutePath().getParent() != null) {
+                            Files.createDirectories(file.toAbsolutePath().getParent());
+                        }
+                        instance = new UserStore(file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+        return instance;
+    }
+
+    CompletableFuture<Boolean> authenticate(String username, String password) {
+        if (isBlank(username) || isBlank(password)) return CompletableFuture.completedFuture(false);
+        Long offset = index.get(username);
+        return CompletableFuture.supplyAsync(() -> {
+            if (offset == null) {
+                // same PBKDF2 cost as for a known user, so response time doesn't tell which usernames exist
+                hash(password, DUMMY_SALT);
+                return false;
+            }
+            User user = find(username, offset);
+            return MessageDigest.isEqual(user.hash, hash(password, user.salt));
+        }, hashing);
+    }
+
+    // completes with false when the username is taken, fails with IllegalArgumentException for missing credentials
+    CompletableFuture<Boolean> register(String username, String email, String password) {
+        if (isBlank(username) || isBlank(password)) {
+            CompletableFuture<Boolean> invalid = new CompletableFuture<>();
+            invalid.completeExceptionally(new IllegalArgumentException("Username and password are required"));
+            return invalid;
+        }
+        if (index.containsKey(username)) return CompletableFuture.completedFuture(false);
+        return CompletableFuture.supplyAsync(() -> {
+            byte[] salt = new byte[SALT_BYTES];
+            random.nextBytes(salt);
+            return append(new User(username, email, salt, hash(password, salt)));
+        }, hashing);
+    }
+
+    boolean exists(String username) {
+        return index.containsKey(username);
+    }
+
+    @Override
+    public void close() throws IOException {
+        hashing.shutdown();
+        channel.close();
+    }
+
+    private User find(String username, long offset) {
+        User user = cache.get(username);
+        if (user == null) {
+            user = read(offset);
+            cache.put(username, user);
+        }
+        return user;
+    }
+
+    // the index check and the append happen under one lock so two registrations can't take the same name
+    private synchronized boolean append(User user) {
+        if (index.containsKey(user.username)) return false;
+        byte[] name = user.username.getBytes(StandardCharsets.UTF_8);
+        byte[] email = user.email.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(4 + 4 + name.length + 4 + email.length + SALT_BYTES + user.hash.length);
+        record.putInt(record.capacity() - 4)
+                .putInt(name.length).put(name)
+                .putInt(email.length).put(email)
+                .put(user.salt).put(user.hash)
+                .flip();
+        try {
+            long offset = channel.size();
+            while (record.hasRemaining()) channel.write(record, offset + record.position());
+            channel.force(false);
+            index.put(user.username, offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        cache.put(user.username, user);
+        return true;
+    }
+
+    // positional reads don't move the channel position, so any number of threads can read at once
+    private User read(long offset) {
+        try {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            readFully(length, offset);
+            ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+            readFully(record, offset + 4);
+            record.flip();
+            String username = readString(record);
+            String email = readString(record);
+            byte[] salt = new byte[SALT_BYTES];
+            record.get(salt);
+            byte[] hash = new byte[record.remaining()];
+            record.get(hash);
+            return new User(username, email, salt, hash);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        long offset = 0;
+        long size = channel.size();
+        ByteBuffer length = ByteBuffer.allocate(4);
+        while (offset + 4 <= size) {
+            length.clear();
+            readFully(length, offset);
+            int recordLength = length.getInt(0);
+            if (recordLength <= 0 || offset + 4 + recordLength > size) break; // torn write at the end
+            ByteBuffer nameLength = ByteBuffer.allocate(4);
+            readFully(nameLength, offset + 4);
+            ByteBuffer name = ByteBuffer.allocate(nameLength.getInt(0));
+            readFully(name, offset + 8);
+            index.put(new String(name.array(), StandardCharsets.UTF_8), offset);
+            offset += 4 + recordLength;
+        }
+        channel.truncate(offset);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Unexpected end of user store");
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] hash(String password, byte[] salt) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, ITERATIONS, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
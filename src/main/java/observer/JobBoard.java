@@ -1,30 +1,424 @@
 package observer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class JobBoard implements Observable {
-    private List<Observer> observers = new ArrayList<>();
+    // observers delivered to by one task
+    static final int PARTITION_SIZE = 1024;
+    // an observer that takes longer than this is moved out of the shared partitions
+    static final long SLOW_OBSERVER_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // postings handed to a durable subscriber per onJobsPosted call while it catches up
+    static final int REPLAY_BATCH = 256;
+
+    private static final Observer[] NONE = new Observer[0];
+
+    // copy-on-write: attach and dettach swap in a new array, publishing reads whatever array is current
+    // without locks or iterators, and never sees a half updated registry
+    private final AtomicReference<Observer[]> observers = new AtomicReference<>(NONE);
+    // inverted index for filtered subscribers: term -> observers, copy-on-write per term.
+    // terms are "keyword:<word>", "location:<location>" and "level:<level>"
+    private final Map<String, Observer[]> index = new ConcurrentHashMap<>();
+    private final Map<Observer, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final Executor executor;
+    private final Set<Observer> slowObservers = ConcurrentHashMap.newKeySet();
+
+    // digest mode: addJobPosting buffers postings and delivers them as one batch per observer
+    private final int digestSize;
+    private final long digestWindowMillis;
+    private final ScheduledExecutorService digestTimer;
+    private List<JobPost> digest = new ArrayList<>();
+    private ScheduledFuture<?> digestFlush;
+
+    // durable subscribers read the posting log from their own offset, see attachFrom
+    private final JobPostLog log;
+    private final Map<Observer, Cursor> cursors = new ConcurrentHashMap<>();
+
+    private static final class Cursor {
+        final Observer observer;
+        final AtomicBoolean draining = new AtomicBoolean();
+        // offset of the first posting not yet delivered
+        volatile long offset;
+
+        Cursor(Observer observer, long offset) {
+            this.observer = observer;
+            this.offset = offset;
+        }
+    }
+
+    // delivers on the posting thread
+    public JobBoard() {
+        this(Runnable::run);
+    }
+
+    // delivers on the executor, e.g. a ForkJoinPool, addJobPosting returns before delivery completes
+    public JobBoard(Executor executor) {
+        this(executor, 1, 0);
+    }
+
+    /**
+     * Digest mode: postings are buffered and flushed when digestSize of them are waiting or digestWindowMillis
+     * after the first one arrived, whichever comes first. Each observer then gets one onJobsPosted call
+     * with the postings it is interested in.
+     */
+    public JobBoard(Executor executor, int digestSize, long digestWindowMillis) {
+        this(executor, digestSize, digestWindowMillis, null);
+    }
+
+    // every posting is appended to the log before it is delivered
+    public JobBoard(Executor executor, JobPostLog log) {
+        this(executor, 1, 0, log);
+    }
+
+    public JobBoard(Executor executor, int digestSize, long digestWindowMillis, JobPostLog log) {
+        this.executor = executor;
+        this.log = log;
+        this.digestSize = digestSize;
+        this.digestWindowMillis = digestWindowMillis;
+        this.digestTimer = digestSize > 1 ? Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "job-board-digest");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
 
     @Override
     public void attach(Observer observer) {
-        observers.add(observer);
+        Observer[] current;
+        do {
+            current = observers.get();
+        } while (!observers.compareAndSet(current, append(current, observer)));
+    }
+
+    /**
+     * Subscribes the observer to postings matching the subscription only.
+     * The observer is indexed under its most selective criterion (its keywords, else its location, else its level),
+     * so a posting only reaches the observers indexed under one of its own terms.
+     */
+    public void attach(Observer observer, Subscription subscription) {
+        Set<String> terms = indexTerms(subscription);
+        if (terms.isEmpty()) {
+            attach(observer);
+            return;
+        }
+        dettach(observer);
+        subscriptions.put(observer, subscription);
+        for (String term : terms) {
+            index.compute(term, (t, current) -> append(current == null ? NONE : current, observer));
+        }
+    }
+
+    /**
+     * Durable subscription: the observer gets every posting in the log from offset on, in order and in batches,
+     * first the backlog and then new postings as they are added. Delivery advances the observer's offset only when
+     * onJobsPosted returns, a failing observer is retried from the same offset with the next posting.
+     * Passing an offset saved from offsetOf lets an observer resume where it left off after a restart,
+     * any other offset that is not a record boundary is rejected with IllegalArgumentException.
+     */
+    public void attachFrom(Observer observer, long offset) {
+        if (log == null) {
+            throw new IllegalStateException("JobBoard has no posting log");
+        }
+        if (!log.isValidOffset(offset)) {
+            throw new IllegalArgumentException("Not an offset of the posting log: " + offset);
+        }
+        Cursor cursor = new Cursor(observer, offset);
+        cursors.put(observer, cursor);
+        drainLater(cursor);
+    }
+
+    // offset to resume the durable subscriber from, -1 for other observers
+    public long offsetOf(Observer observer) {
+        Cursor cursor = cursors.get(observer);
+        return cursor == null ? -1 : cursor.offset;
     }
 
     @Override
     public boolean dettach(Observer observer) {
-        //TODO
-        return false;
+        boolean durable = cursors.remove(observer) != null;
+        Subscription subscription = subscriptions.remove(observer);
+        boolean removed = subscription != null;
+        if (removed) {
+            for (String term : indexTerms(subscription)) {
+                index.computeIfPresent(term, (t, current) -> {
+                    Observer[] updated = remove(current, observer);
+                    return updated.length == 0 ? null : updated;
+                });
+            }
+        }
+        Observer[] current, updated;
+        do {
+            current = observers.get();
+            updated = remove(current, observer);
+            if (updated == current) break;
+        } while (!observers.compareAndSet(current, updated));
+        removed |= updated != current || durable;
+        if (removed) slowObservers.remove(observer);
+        return removed;
     }
 
     @Override
     public void notify(JobPost jobPosting) {
-        for (Observer observer : observers) {
-            observer.onJobPosted(jobPosting);
+        publish(jobPosting);
+    }
+
+    /**
+     * Fans the posting out over the executor: unfiltered observers plus the filtered observers whose subscription
+     * matches are split into ranges of PARTITION_SIZE, one task each, and observers known to be slow get a task
+     * of their own so they can't hold up the rest.
+     * The returned future completes when every observer has been called.
+     */
+    public CompletableFuture<Void> publish(JobPost jobPosting) {
+        Observer[] everything = observers.get();
+        Observer[] matched = matching(jobPosting);
+        // fixed for this posting, so an observer flagged slow meanwhile is neither skipped nor delivered twice
+        Set<Observer> slow = slowObservers.isEmpty() ? Collections.emptySet() : new HashSet<>(slowObservers);
+        List<CompletableFuture<Void>> deliveries = new ArrayList<>();
+        for (Observer observer : slow) {
+            // unfiltered observers get everything, dettach clears the slow flag of removed ones
+            if (!subscriptions.containsKey(observer) || contains(matched, observer)) {
+                deliveries.add(CompletableFuture.runAsync(() -> deliver(observer, jobPosting), executor));
+            }
+        }
+        for (int from = 0; from < everything.length; from += PARTITION_SIZE) {
+            deliveries.add(deliverAsync(everything, from, Math.min(everything.length, from + PARTITION_SIZE), slow, jobPosting));
+        }
+        for (int from = 0; from < matched.length; from += PARTITION_SIZE) {
+            deliveries.add(deliverAsync(matched, from, Math.min(matched.length, from + PARTITION_SIZE), slow, jobPosting));
+        }
+        return CompletableFuture.allOf(deliveries.toArray(new CompletableFuture<?>[0]));
+    }
+
+    // filtered observers indexed under one of the posting's terms whose full subscription matches
+    private Observer[] matching(JobPost jobPosting) {
+        if (index.isEmpty()) return NONE;
+        List<Observer[]> hits = new ArrayList<>();
+        for (String term : postTerms(jobPosting)) {
+            Observer[] indexed = index.get(term);
+            if (indexed != null) hits.add(indexed);
+        }
+        if (hits.isEmpty()) return NONE;
+        // an observer indexed under several keywords of the same title must only be delivered once
+        Set<Observer> seen = hits.size() > 1 ? Collections.newSetFromMap(new IdentityHashMap<>()) : null;
+        List<Observer> result = new ArrayList<>();
+        for (Observer[] indexed : hits) {
+            for (Observer observer : indexed) {
+                if (seen != null && !seen.add(observer)) continue;
+                Subscription subscription = subscriptions.get(observer);
+                if (subscription != null && subscription.matches(jobPosting)) result.add(observer);
+            }
+        }
+        return result.toArray(NONE);
+    }
+
+    private static Set<String> indexTerms(Subscription subscription) {
+        Set<String> terms = new HashSet<>();
+        if (!subscription.getKeywords().isEmpty()) {
+            for (String keyword : subscription.getKeywords()) terms.add("keyword:" + keyword);
+        } else if (subscription.getLocation() != null) {
+            terms.add("location:" + subscription.getLocation());
+        } else if (subscription.getLevel() != null) {
+            terms.add("level:" + subscription.getLevel());
         }
+        return terms;
+    }
+
+    private static Set<String> postTerms(JobPost jobPosting) {
+        Set<String> terms = new HashSet<>();
+        for (String word : Subscription.titleTerms(jobPosting.getTitle())) terms.add("keyword:" + word);
+        if (jobPosting.getLocation() != null) terms.add("location:" + Subscription.normalize(jobPosting.getLocation()));
+        if (jobPosting.getLevel() != null) terms.add("level:" + Subscription.normalize(jobPosting.getLevel()));
+        return terms;
     }
 
     public void addJobPosting(JobPost jobPosting) {
-        this.notify(jobPosting);
+        if (log != null) {
+            log.append(jobPosting);
+            for (Cursor cursor : cursors.values()) drainLater(cursor);
+        }
+        if (digestTimer == null) {
+            this.notify(jobPosting);
+            return;
+        }
+        boolean full;
+        synchronized (this) {
+            digest.add(jobPosting);
+            full = digest.size() >= digestSize;
+            if (!full && digestFlush == null) {
+                digestFlush = digestTimer.schedule(this::flushDigest, digestWindowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) flushDigest();
+    }
+
+    // delivers whatever the digest holds right now
+    public CompletableFuture<Void> flushDigest() {
+        List<JobPost> batch;
+        synchronized (this) {
+            batch = digest;
+            digest = new ArrayList<>();
+            // a size triggered flush makes the pending timer pointless, the next posting starts a new window
+            if (digestFlush != null) {
+                digestFlush.cancel(false);
+                digestFlush = null;
+            }
+        }
+        return publishBatch(batch);
+    }
+
+    /**
+     * Like publish, for several postings at once: unfiltered observers get the whole batch, filtered observers
+     * the postings matching their subscription, each in a single onJobsPosted call.
+     */
+    public CompletableFuture<Void> publishBatch(List<JobPost> jobPostings) {
+        if (jobPostings.isEmpty()) return CompletableFuture.completedFuture(null);
+        List<JobPost> all = Collections.unmodifiableList(new ArrayList<>(jobPostings));
+        Observer[] everything = observers.get();
+        Map<Observer, List<JobPost>> filtered = new IdentityHashMap<>();
+        for (JobPost jobPosting : all) {
+            for (Observer observer : matching(jobPosting)) {
+                filtered.computeIfAbsent(observer, o -> new ArrayList<>()).add(jobPosting);
+            }
+        }
+        Observer[] matched = filtered.keySet().toArray(NONE);
+        Set<Observer> slow = slowObservers.isEmpty() ? Collections.emptySet() : new HashSet<>(slowObservers);
+        List<CompletableFuture<Void>> deliveries = new ArrayList<>();
+        for (Observer observer : slow) {
+            List<JobPost> posts = subscriptions.containsKey(observer) ? filtered.get(observer) : all;
+            if (posts != null) {
+                deliveries.add(CompletableFuture.runAsync(() -> deliver(observer, posts), executor));
+            }
+        }
+        for (int from = 0; from < everything.length; from += PARTITION_SIZE) {
+            int start = from, end = Math.min(everything.length, from + PARTITION_SIZE);
+            deliveries.add(CompletableFuture.runAsync(() -> {
+                for (int i = start; i < end; i++) {
+                    if (!slow.isEmpty() && slow.contains(everything[i])) continue;
+                    deliver(everything[i], all);
+                }
+            }, executor));
+        }
+        for (int from = 0; from < matched.length; from += PARTITION_SIZE) {
+            int start = from, end = Math.min(matched.length, from + PARTITION_SIZE);
+            deliveries.add(CompletableFuture.runAsync(() -> {
+                for (int i = start; i < end; i++) {
+                    if (!slow.isEmpty() && slow.contains(matched[i])) continue;
+                    deliver(matched[i], filtered.get(matched[i]));
+                }
+            }, executor));
+        }
+        return CompletableFuture.allOf(deliveries.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private CompletableFuture<Void> deliverAsync(Observer[] snapshot, int from, int to, Set<Observer> slow, JobPost jobPosting) {
+        return CompletableFuture.runAsync(() -> {
+            for (int i = from; i < to; i++) {
+                if (!slow.isEmpty() && slow.contains(snapshot[i])) continue;
+                deliver(snapshot[i], jobPosting);
+            }
+        }, executor);
+    }
+
+    // at most one drain per cursor runs at a time, postings added meanwhile are picked up by its next round
+    private void drainLater(Cursor cursor) {
+        if (cursor.draining.compareAndSet(false, true)) {
+            executor.execute(() -> drain(cursor));
+        }
+    }
+
+    private void drain(Cursor cursor) {
+        boolean failed = false;
+        try {
+            List<JobPost> batch = new ArrayList<>(REPLAY_BATCH);
+            while (!failed && cursors.get(cursor.observer) == cursor) {
+                long next = log.read(cursor.offset, REPLAY_BATCH, batch);
+                if (batch.isEmpty()) {
+                    cursor.offset = next;
+                    break;
+                }
+                try {
+                    cursor.observer.onJobsPosted(Collections.unmodifiableList(batch));
+                    cursor.offset = next;
+                } catch (RuntimeException e) {
+                    System.err.println("Observer " + cursor.observer + " failed at offset " + cursor.offset + ": " + e);
+                    failed = true;
+                }
+                batch = new ArrayList<>(REPLAY_BATCH);
+            }
+        } finally {
+            cursor.draining.set(false);
+        }
+        // a posting appended after the last read but before the flag was cleared found the drain still running
+        if (!failed && cursor.offset < log.endOffset()) drainLater(cursor);
+    }
+
+    private static Observer[] append(Observer[] array, Observer observer) {
+        Observer[] updated = Arrays.copyOf(array, array.length + 1);
+        updated[array.length] = observer;
+        return updated;
+    }
+
+    // the same array when the observer isn't in it
+    private static Observer[] remove(Observer[] array, Observer observer) {
+        int index = indexOf(array, observer);
+        if (index < 0) return array;
+        Observer[] updated = new Observer[array.length - 1];
+        System.arraycopy(array, 0, updated, 0, index);
+        System.arraycopy(array, index + 1, updated, index, array.length - index - 1);
+        return updated;
+    }
+
+    private static boolean contains(Observer[] array, Observer observer) {
+        return indexOf(array, observer) >= 0;
+    }
+
+    private static int indexOf(Observer[] array, Observer observer) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i].equals(observer)) return i;
+        }
+        return -1;
+    }
+
+    // a failing observer is reported and skipped, the rest of its partition still gets the posting
+    private void deliver(Observer observer, JobPost jobPosting) {
+        long start = System.nanoTime();
+        try {
+            observer.onJobPosted(jobPosting);
+        } catch (RuntimeException e) {
+            System.err.println("Observer " + observer + " failed: " + e);
+        }
+        trackLatency(observer, start);
+    }
+
+    private void deliver(Observer observer, List<JobPost> jobPostings) {
+        long start = System.nanoTime();
+        try {
+            observer.onJobsPosted(jobPostings);
+        } catch (RuntimeException e) {
+            System.err.println("Observer " + observer + " failed: " + e);
+        }
+        trackLatency(observer, start);
+    }
+
+    private void trackLatency(Observer observer, long start) {
+        if (System.nanoTime() - start > SLOW_OBSERVER_NANOS) {
+            slowObservers.add(observer);
+        }
     }
-}
\ No newline at end of file
+}
@@ -2,12 +2,29 @@ package observer;
 
 public class JobPost {
     private String title;
+    private String location;
+    private String level;
 
     public JobPost(String title) {
+        this(title, null, null);
+    }
+
+    public JobPost(String title, String location, String level) {
         this.title = title;
+        this.location = location;
+        this.level = level;
     }
 
     public String getTitle() {
         return title;
     }
+
+    // null when the posting doesn't say
+    public String getLocation() {
+        return location;
+    }
+
+    public String getLevel() {
+        return level;
+    }
 }
@@ -0,0 +1,275 @@
+package observer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of job postings, split into fixed size memory-mapped segment files.
+ *
+ * Every posting gets a global offset (segment base + position in the segment), readers can start from any offset
+ * returned by append() and read forward sequentially. A segment file is named after its base offset, when a record
+ * doesn't fit into the current segment the next one starts right after the last record.
+ * Records are [int length][int crc32][title][location][level], strings as [int n][n bytes UTF-8] with n = -1 for null.
+ * Segments are zero filled, so a zero length marks the end of the written data.
+ *
+ * Each segment keeps the positions of its records, so offsets handed in by readers are checked in O(log n)
+ * and a misaligned offset is rejected instead of being decoded as a record.
+ * Retention keeps at most maxSegments segments, older ones are deleted when a new segment is started;
+ * readers positioned before the first retained offset continue from there.
+ * Writes reach the OS page cache right away and survive a process crash, sync() forces them to disk.
+ */
+public class JobPostLog implements AutoCloseable {
+    private static final int HEADER_BYTES = 8;
+    private static final String SUFFIX = ".log";
+
+    private static final class Segment {
+        final long base;
+        final Path file;
+        final MappedByteBuffer buffer;
+        // record positions in ascending order, written by the appender only. count is published after the
+        // position it covers, readers look at count first
+        private volatile int[] starts = new int[64];
+        private volatile int count;
+
+        Segment(long base, Path file, MappedByteBuffer buffer) {
+            this.base = base;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        void addStart(int position) {
+            int[] current = starts;
+            if (count == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                starts = current;
+            }
+            current[count] = position;
+            count++;
+        }
+
+        boolean isStart(int position) {
+            int n = count;
+            return Arrays.binarySearch(starts, 0, n, position) >= 0;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final CRC32 crc = new CRC32();
+    private Segment current;
+    // everything below end is complete, readers never look past it
+    private volatile long end;
+
+    public JobPostLog(Path directory, int segmentSize, int maxSegments) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                segments.put(base, map(base, file));
+            }
+        }
+        int length = 0;
+        for (Segment segment : segments.values()) {
+            length = validLength(segment);
+        }
+        if (segments.isEmpty()) {
+            current = createSegment(0);
+            end = 0;
+        } else {
+            current = segments.lastEntry().getValue();
+            end = current.base + length;
+        }
+    }
+
+    public JobPostLog(Path directory) throws IOException {
+        this(directory, 64 * 1024 * 1024, 16);
+    }
+
+    // returns the offset of the appended record
+    public synchronized long append(JobPost post) {
+        byte[] title = bytes(post.getTitle());
+        byte[] location = bytes(post.getLocation());
+        byte[] level = bytes(post.getLevel());
+        int payload = 12 + length(title) + length(location) + length(level);
+        if (HEADER_BYTES + payload + 4 > segmentSize) {
+            throw new IllegalArgumentException("Job posting too large for a log segment: " + payload + " bytes");
+        }
+        int position = (int) (end - current.base);
+        // keep 4 bytes free at the end of a segment so a zero length can always mark its end
+        if (position + HEADER_BYTES + payload + 4 > segmentSize) {
+            roll();
+            position = 0;
+        }
+        ByteBuffer out = current.buffer.duplicate();
+        out.position(position + HEADER_BYTES);
+        put(out, title);
+        put(out, location);
+        put(out, level);
+        ByteBuffer body = current.buffer.duplicate();
+        body.position(position + HEADER_BYTES).limit(position + HEADER_BYTES + payload);
+        crc.reset();
+        crc.update(body);
+        current.buffer.putInt(position + 4, (int) crc.getValue());
+        current.buffer.putInt(position, payload);
+        current.addStart(position);
+        long offset = end;
+        end = offset + HEADER_BYTES + payload;
+        return offset;
+    }
+
+    /**
+     * Reads up to max postings starting at offset into out and returns the offset to continue from.
+     * Offsets older than the retained segments continue from the first retained one.
+     * Throws IllegalArgumentException for an offset that is not one returned by this log.
+     */
+    public long read(long offset, int max, List<JobPost> out) {
+        long limit = end;
+        long position = Math.max(offset, startOffset());
+        if (!isValidOffset(position)) {
+            throw new IllegalArgumentException("Not a record offset: " + offset);
+        }
+        int read = 0;
+        while (read < max && position < limit) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(position);
+            if (entry == null) break;
+            Segment segment = entry.getValue();
+            ByteBuffer in = segment.buffer.duplicate();
+            in.position((int) (position - segment.base));
+            int payload = in.remaining() >= 4 ? in.getInt() : 0;
+            if (payload == 0) {
+                // end of this segment, the next one starts at this offset
+                Long next = segments.higherKey(segment.base);
+                if (next == null) break;
+                position = next;
+                continue;
+            }
+            in.getInt();
+            String title = string(in);
+            String location = string(in);
+            String level = string(in);
+            out.add(new JobPost(title, location, level));
+            position += HEADER_BYTES + payload;
+            read++;
+        }
+        return position;
+    }
+
+    /**
+     * True for the offset of a record, the end of the log and offsets before the retained segments,
+     * i.e. every offset read() accepts.
+     */
+    public boolean isValidOffset(long offset) {
+        if (offset < startOffset() || offset == end) return true;
+        if (offset > end) return false;
+        Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+        return entry != null && entry.getValue().isStart((int) (offset - entry.getKey()));
+    }
+
+    public long startOffset() {
+        return segments.firstKey();
+    }
+
+    public long endOffset() {
+        return end;
+    }
+
+    public synchronized void sync() {
+        current.buffer.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        sync();
+    }
+
+    private void roll() {
+        current.buffer.force();
+        current = createSegment(end);
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.pollFirstEntry().getValue();
+            try {
+                Files.deleteIfExists(oldest.file);
+            } catch (IOException e) {
+                System.err.println("Could not delete old job post log segment " + oldest.file + ": " + e);
+            }
+        }
+    }
+
+    private Segment createSegment(long base) {
+        Path file = directory.resolve(String.format("%020d%s", base, SUFFIX));
+        try {
+            Segment segment = map(base, file);
+            segments.put(base, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Segment map(long base, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Segment(base, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+    }
+
+    // length of the intact records, a torn record left by a crash is zeroed so it reads as the end
+    private int validLength(Segment segment) {
+        ByteBuffer in = segment.buffer.duplicate();
+        int position = 0;
+        while (position + HEADER_BYTES <= segmentSize) {
+            int payload = in.getInt(position);
+            if (payload <= 0 || position + HEADER_BYTES + payload > segmentSize) break;
+            ByteBuffer body = segment.buffer.duplicate();
+            body.position(position + HEADER_BYTES).limit(position + HEADER_BYTES + payload);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != in.getInt(position + 4)) break;
+            segment.addStart(position);
+            position += HEADER_BYTES + payload;
+        }
+        if (position + 4 <= segmentSize) segment.buffer.putInt(position, 0);
+        return position;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void put(ByteBuffer out, byte[] value) {
+        if (value == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(value.length).put(value);
+        }
+    }
+
+    private static String string(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] value = new byte[length];
+        in.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -1,5 +1,7 @@
 package observer;
 
+import java.util.List;
+
 public class JobSeeker implements Observer {
     private String name;
 
@@ -11,5 +13,15 @@ public class JobSeeker implements Observer {
     public void onJobPosted(JobPost job) {
         System.out.println("Hi " + this.name + "! New job posted: " + job.getTitle());
     }
+
+    // one write for the whole batch instead of one per posting
+    @Override
+    public void onJobsPosted(List<JobPost> jobs) {
+        StringBuilder sb = new StringBuilder("Hi ").append(this.name).append("! ").append(jobs.size()).append(" new jobs posted:");
+        for (JobPost job : jobs) {
+            sb.append(System.lineSeparator()).append("  - ").append(job.getTitle());
+        }
+        System.out.println(sb);
+    }
 }
 
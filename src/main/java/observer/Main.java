@@ -1,7 +1,12 @@
 package observer;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         JobBoard jobBoard = new JobBoard();
 
         JobSeeker johnDoe = new JobSeeker("John Doe");
@@ -11,5 +16,38 @@ public class Main {
         jobBoard.attach(janeDoe);
 
         jobBoard.addJobPosting(new JobPost("Software Development Engineer II at AWS"));
+
+        // fan-out on a fork-join pool, publish returns right away and the future tracks delivery
+        JobBoard asyncJobBoard = new JobBoard(ForkJoinPool.commonPool());
+        asyncJobBoard.attach(johnDoe);
+        asyncJobBoard.attach(janeDoe);
+        asyncJobBoard.publish(new JobPost("Senior Software Engineer at Google")).join();
+
+        // filtered subscription, only postings with a matching title keyword, location and level reach it
+        JobSeeker alice = new JobSeeker("Alice");
+        jobBoard.attach(alice, Subscription.keywords("engineer", "developer").inLocation("Seattle").atLevel("Senior"));
+        jobBoard.addJobPosting(new JobPost("Senior Software Engineer", "Seattle", "Senior"));
+        jobBoard.addJobPosting(new JobPost("Product Manager", "Seattle", "Senior"));
+
+        // digest mode, postings are delivered in batches of up to 3 or every 100ms
+        JobBoard digestJobBoard = new JobBoard(ForkJoinPool.commonPool(), 3, 100);
+        digestJobBoard.attach(johnDoe);
+        digestJobBoard.addJobPosting(new JobPost("Data Engineer at Netflix"));
+        digestJobBoard.addJobPosting(new JobPost("Backend Engineer at Stripe"));
+        digestJobBoard.addJobPosting(new JobPost("SRE at Meta"));
+        digestJobBoard.addJobPosting(new JobPost("iOS Developer at Apple"));
+        digestJobBoard.flushDigest().join();
+
+        // postings go to a log first, a durable subscriber catches up from any offset and then follows new postings
+        try (JobPostLog log = new JobPostLog(Files.createTempDirectory("job-posts"))) {
+            JobBoard loggedJobBoard = new JobBoard(ForkJoinPool.commonPool(), log);
+            loggedJobBoard.addJobPosting(new JobPost("Staff Engineer at Shopify"));
+            loggedJobBoard.addJobPosting(new JobPost("Security Engineer at Cloudflare"));
+            JobSeeker bob = new JobSeeker("Bob");
+            loggedJobBoard.attachFrom(bob, log.startOffset());
+            loggedJobBoard.addJobPosting(new JobPost("ML Engineer at OpenAI"));
+            ForkJoinPool.commonPool().awaitQuiescence(1, TimeUnit.SECONDS);
+        }
+        ForkJoinPool.commonPool().awaitQuiescence(1, TimeUnit.SECONDS);
     }
 }
\ No newline at end of file
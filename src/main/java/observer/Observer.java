@@ -1,5 +1,14 @@
 package observer;
 
+import java.util.List;
+
 public interface Observer {
     void onJobPosted(JobPost job);
+
+    // batched delivery from digest mode, override to handle the whole batch at once
+    default void onJobsPosted(List<JobPost> jobs) {
+        for (JobPost job : jobs) {
+            onJobPosted(job);
+        }
+    }
 }
\ No newline at end of file
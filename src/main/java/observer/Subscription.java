@@ -0,0 +1,86 @@
+package observer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * What a subscriber wants to hear about: postings whose title contains any of the keywords,
+ * in the given location, at the given level. Criteria left out (empty keywords, null location or level) match anything.
+ * Matching is case insensitive. Keywords are tokenized like titles, so "C++" matches the term "c" of "C++ Developer";
+ * a keyword must be a single word, phrases like "software engineer" are rejected.
+ */
+public class Subscription {
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final Set<String> keywords;
+    private final String location;
+    private final String level;
+
+    public Subscription(Set<String> keywords, String location, String level) {
+        Set<String> normalized = new HashSet<>();
+        for (String keyword : keywords) normalized.add(keywordTerm(keyword));
+        this.keywords = Collections.unmodifiableSet(normalized);
+        this.location = location == null ? null : normalize(location);
+        this.level = level == null ? null : normalize(level);
+    }
+
+    public static Subscription keywords(String... keywords) {
+        return new Subscription(new HashSet<>(Arrays.asList(keywords)), null, null);
+    }
+
+    public Subscription inLocation(String location) {
+        return new Subscription(keywords, location, level);
+    }
+
+    public Subscription atLevel(String level) {
+        return new Subscription(keywords, location, level);
+    }
+
+    public Set<String> getKeywords() {
+        return keywords;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public boolean matches(JobPost post) {
+        if (location != null && (post.getLocation() == null || !location.equals(normalize(post.getLocation())))) return false;
+        if (level != null && (post.getLevel() == null || !level.equals(normalize(post.getLevel())))) return false;
+        if (keywords.isEmpty()) return true;
+        for (String word : titleTerms(post.getTitle())) {
+            if (keywords.contains(word)) return true;
+        }
+        return false;
+    }
+
+    // the words of a title, lower cased, split on anything that is not a letter or digit
+    static Set<String> titleTerms(String title) {
+        Set<String> terms = new HashSet<>();
+        for (String word : NON_WORD.split(normalize(title))) {
+            if (!word.isEmpty()) terms.add(word);
+        }
+        return terms;
+    }
+
+    // the one title term a keyword can match, a keyword that no title could produce would never match anything
+    private static String keywordTerm(String keyword) {
+        Set<String> terms = titleTerms(keyword);
+        if (terms.size() != 1) {
+            throw new IllegalArgumentException("Keyword must be a single word: \"" + keyword + "\"");
+        }
+        return terms.iterator().next();
+    }
+
+    static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
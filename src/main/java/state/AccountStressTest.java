@@ -0,0 +1,62 @@
+package state;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hammers a few shared accounts with withdrawals and deposits from many threads and checks that
+ * every balance equals its opening balance plus what was deposited minus what was successfully withdrawn.
+ */
+public class AccountStressTest {
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        int opsPerThread = 1_000_000;
+        Account[] accounts = new Account[4];
+        AtomicLong[] expected = new AtomicLong[accounts.length];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = new Account(1000.50, "User" + i);
+            expected[i] = new AtomicLong(accounts[i].getBalanceCents());
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long[] net = new long[accounts.length];
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < opsPerThread; i++) {
+                    int a = random.nextInt(accounts.length);
+                    long cents = 1 + random.nextInt(5_000);
+                    if (random.nextBoolean()) {
+                        if (accounts[a].withdraw(cents)) net[a] -= cents;
+                    } else {
+                        accounts[a].deposit(cents);
+                        net[a] += cents;
+                    }
+                }
+                for (int a = 0; a < accounts.length; a++) expected[a].addAndGet(net[a]);
+                done.countDown();
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        boolean ok = true;
+        for (int a = 0; a < accounts.length; a++) {
+            long actual = accounts[a].getBalanceCents();
+            boolean match = actual == expected[a].get() && actual >= 0;
+            ok &= match;
+            System.out.printf("%s: balance=%d expected=%d %s%n", accounts[a].getUserName(), actual, expected[a].get(), match ? "OK" : "LOST UPDATES");
+        }
+        System.out.printf("%d threads, %.0f transactions/s%n", threads, (double) threads * opsPerThread / seconds);
+        if (!ok) System.exit(1);
+    }
+}
@@ -0,0 +1,25 @@
+package state;
+
+// One step of input for a simulated terminal: continue, cancel, or continue into a transaction with its key press and amount.
+final class AtmEvent {
+    static final AtmEvent PROCEED = new AtmEvent(false, 0, 0);
+    static final AtmEvent CANCEL = new AtmEvent(true, 0, 0);
+
+    final boolean cancel;
+    final int keyPress;
+    final double amount;
+
+    private AtmEvent(boolean cancel, int keyPress, double amount) {
+        this.cancel = cancel;
+        this.keyPress = keyPress;
+        this.amount = amount;
+    }
+
+    static AtmEvent withdraw(double amount) {
+        return new AtmEvent(false, 1, amount);
+    }
+
+    static AtmEvent deposit(double amount) {
+        return new AtmEvent(false, 2, amount);
+    }
+}
@@ -0,0 +1,49 @@
+package state;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Drives many simulated terminals through the AtmSessionEngine: each one goes welcome, insert card,
+ * a withdrawal, remove card and is then cancelled. Prints sessions and state transitions per second.
+ * Args: [terminals] [rounds] [transaction log file], with a log file every withdrawal is durable.
+ */
+public class AtmLoadTest {
+    public static void main(String[] args) throws IOException {
+        int terminals = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        List<CompletableFuture<Void>> sessions = new ArrayList<>(terminals);
+
+        TransactionLog log = args.length > 2 ? new TransactionLog(Paths.get(args[2])) : null;
+        int workers = Runtime.getRuntime().availableProcessors() * (log == null ? 1 : 64);
+
+        long start = System.nanoTime();
+        StateMetrics metrics = new StateMetrics();
+        try (AtmSessionEngine engine = new AtmSessionEngine(workers, log, metrics)) {
+            for (int i = 0; i < terminals; i++) {
+                Card card = new Card(new Account("ACC-" + i, 1000.50, "User" + i));
+                AtmSessionEngine.AtmSession session = engine.open(card, AtmDisplay.SILENT);
+                for (int r = 0; r < rounds; r++) {
+                    session.submit(AtmEvent.PROCEED);
+                    session.submit(AtmEvent.PROCEED);
+                    session.submit(AtmEvent.withdraw(10));
+                    session.submit(AtmEvent.PROCEED);
+                    session.submit(AtmEvent.PROCEED);
+                }
+                session.submit(AtmEvent.CANCEL);
+                sessions.add(session.finished());
+            }
+            CompletableFuture.allOf(sessions.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            if (log != null) log.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long transitions = (long) terminals * (rounds * 5L + 1);
+        System.out.printf("%d sessions, %d transitions in %.2fs: %.0f sessions/s, %.0f transitions/s%n",
+                terminals, transitions, seconds, terminals / seconds, transitions / seconds);
+        System.out.print(metrics.snapshot());
+    }
+}
@@ -0,0 +1,133 @@
+package state;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many AtmContext sessions on a small worker pool.
+ * Each session is an actor: events are queued without blocking and the session is scheduled on a worker
+ * only while it has input, so idle terminals cost a queue and a context, not a thread.
+ * A session never runs on two workers at once, so AtmContext needs no locking.
+ */
+class AtmSessionEngine implements AutoCloseable {
+    // events a session handles before giving its worker back, keeps busy sessions from starving others
+    private static final int MAX_EVENTS_PER_RUN = 64;
+
+    private final ExecutorService workers;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final TransactionLog log;
+    private final StateMetrics metrics;
+
+    // with a log, workers wait for group commits, so use more workers than cores to keep batches full.
+    // log and metrics are optional
+    AtmSessionEngine(int workerCount, TransactionLog log, StateMetrics metrics) {
+        this.workers = Executors.newFixedThreadPool(workerCount);
+        this.log = log;
+        this.metrics = metrics;
+    }
+
+    AtmSessionEngine(int workerCount) {
+        this(workerCount, null, null);
+    }
+
+    AtmSessionEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    AtmSession open(Card card, AtmDisplay display) {
+        activeSessions.incrementAndGet();
+        return new AtmSession(card, display);
+    }
+
+    int activeSessions() {
+        return activeSessions.get();
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    class AtmSession implements AtmInput {
+        private final Queue<AtmEvent> inbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+        private final AtmContext context;
+        private AtmEvent current;
+
+        private AtmSession(Card card, AtmDisplay display) {
+            this.context = new AtmContext(card, this, display, AtmTransitions.linear(), log);
+            this.context.setMetrics(metrics);
+        }
+
+        // never blocks, the event is handled later on one of the engine's workers
+        void submit(AtmEvent event) {
+            inbox.add(event);
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(this::drain);
+            }
+        }
+
+        // completes once the session has been cancelled and said thank you
+        CompletableFuture<Void> finished() {
+            return finished;
+        }
+
+        private void drain() {
+            try {
+                AtmEvent event;
+                for (int i = 0; i < MAX_EVENTS_PER_RUN && !finished.isDone() && (event = inbox.poll()) != null; i++) {
+                    handle(event);
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            // an event may have arrived after the last poll but before scheduled was cleared
+            if (!inbox.isEmpty() && !finished.isDone() && scheduled.compareAndSet(false, true)) {
+                workers.execute(this::drain);
+            }
+        }
+
+        private void handle(AtmEvent event) {
+            current = event;
+            try {
+                context.execute(event.cancel);
+            } catch (RuntimeException e) {
+                finish();
+                finished.completeExceptionally(e);
+                return;
+            }
+            if (event.cancel) {
+                finish();
+                finished.complete(null);
+            }
+        }
+
+        private void finish() {
+            inbox.clear();
+            activeSessions.decrementAndGet();
+        }
+
+        // TransactionState reads its key press and amount from the event being handled
+        @Override
+        public int nextInt() {
+            return current.keyPress;
+        }
+
+        @Override
+        public double nextDouble() {
+            return current.amount;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package state;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Transitions per second of the table driven AtmContext against the previous
+ * switch + HashMap<Class, State> lookup, reproduced here as LegacyAtmContext.
+ * Both run the same State objects with a silent display, so the difference is the dispatch.
+ */
+public class AtmTransitionBenchmark {
+    private static final int WARMUP = 5_000_000;
+    private static final int ITERATIONS = 50_000_000;
+
+    static class LegacyAtmContext {
+        Map<Class<? extends State>, State> cache = new HashMap<>();
+        StateEnum[] allStates = StateEnum.values();
+        int currentState = -1, totalStates = allStates.length;
+        State state;
+        Card card;
+        AtmInput input;
+        AtmDisplay display;
+
+        LegacyAtmContext(Card card, AtmInput input, AtmDisplay display) {
+            this.card = card;
+            this.input = input;
+            this.display = display;
+        }
+
+        void execute(boolean cancel) {
+            if (cancel) {
+                currentState = totalStates - 1;
+            } else {
+                currentState++;
+                if (currentState == totalStates) currentState = 0;
+            }
+            handleFlow(allStates[currentState]);
+        }
+
+        void handleFlow(StateEnum eStateEnum) {
+            switch (eStateEnum) {
+                case WELCOME:
+                    if (!cache.containsKey(WelcomeState.class)) cache.put(WelcomeState.class, new WelcomeState(display));
+                    state = cache.get(WelcomeState.class);
+                    break;
+                case INSERT_CARD:
+                    if (!cache.containsKey(InsertCardState.class)) cache.put(InsertCardState.class, new InsertCardState(display));
+                    state = cache.get(InsertCardState.class);
+                    break;
+                case TRANSACTION:
+                    if (!cache.containsKey(TransactionState.class)) cache.put(TransactionState.class, new TransactionState(card, input, display));
+                    state = cache.get(TransactionState.class);
+                    break;
+                case REMOVE_CARD:
+                    if (!cache.containsKey(RemoveCardState.class)) cache.put(RemoveCardState.class, new RemoveCardState(display));
+                    state = cache.get(RemoveCardState.class);
+                    break;
+                case THANK_YOU:
+                    if (!cache.containsKey(EndState.class)) cache.put(EndState.class, new EndState(display));
+                    state = cache.get(EndState.class);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown state: " + eStateEnum);
+            }
+            state.handleFlow();
+        }
+    }
+
+    // deposits one cent on every transaction so the balance never runs out
+    static final AtmInput DEPOSIT = new AtmInput() {
+        public int nextInt() { return 2; }
+        public double nextDouble() { return 0.01; }
+    };
+
+    public static void main(String[] args) {
+        Card card = new Card(new Account(0, "Bench"));
+        LegacyAtmContext legacy = new LegacyAtmContext(card, DEPOSIT, AtmDisplay.SILENT);
+        AtmContext table = new AtmContext(card, DEPOSIT, AtmDisplay.SILENT);
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                if (i == WARMUP) start = System.nanoTime();
+                legacy.execute(false);
+            }
+            double legacyRate = ITERATIONS / ((System.nanoTime() - start) / 1e9);
+
+            for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                if (i == WARMUP) start = System.nanoTime();
+                table.execute(false);
+            }
+            double tableRate = ITERATIONS / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("switch+HashMap: %.0f transitions/s, table: %.0f transitions/s%n", legacyRate, tableRate);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package state;
+
+import java.util.Arrays;
+
+/**
+ * Transition table for AtmContext, indexed by StateEnum.ordinal().
+ * linear() is the classic flow WELCOME -> INSERT_CARD -> TRANSACTION -> REMOVE_CARD -> THANK_YOU -> WELCOME
+ * with cancel jumping to THANK_YOU, other flows can be built by overriding single edges.
+ * Tables are immutable, so one instance can be shared by every session.
+ */
+final class AtmTransitions {
+    private static final StateEnum[] STATES = StateEnum.values();
+
+    private final StateEnum start;
+    private final StateEnum cancel;
+    private final StateEnum[] next;
+
+    private AtmTransitions(StateEnum start, StateEnum cancel, StateEnum[] next) {
+        this.start = start;
+        this.cancel = cancel;
+        this.next = next;
+    }
+
+    static AtmTransitions linear() {
+        StateEnum[] next = new StateEnum[STATES.length];
+        for (int i = 0; i < STATES.length; i++) {
+            next[i] = STATES[(i + 1) % STATES.length];
+        }
+        return new AtmTransitions(STATES[0], STATES[STATES.length - 1], next);
+    }
+
+    // a copy of this table where continuing from 'from' leads to 'to'
+    AtmTransitions withNext(StateEnum from, StateEnum to) {
+        StateEnum[] copy = Arrays.copyOf(next, next.length);
+        copy[from.ordinal()] = to;
+        return new AtmTransitions(start, cancel, copy);
+    }
+
+    AtmTransitions withStart(StateEnum start) {
+        return new AtmTransitions(start, cancel, next);
+    }
+
+    AtmTransitions withCancel(StateEnum cancel) {
+        return new AtmTransitions(start, cancel, next);
+    }
+
+    // current is null before the first step
+    StateEnum next(StateEnum current, boolean cancelled) {
+        if (cancelled) return cancel;
+        return current == null ? start : next[current.ordinal()];
+    }
+}
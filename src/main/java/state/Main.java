@@ -1,8 +1,8 @@
 package state;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Scanner;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Account
@@ -14,17 +14,39 @@ import java.util.Scanner;
 
 
 class Account {
-    private double balance;
+    // fixed-point cents updated with CAS, concurrent sessions on the same account can't lose updates.
+    // every account has its own counter, so there is no global lock across accounts
+    private final AtomicLong balanceCents;
+    // stable and unique, identifies the account in the transaction log
+    private final String accountNumber;
     private String userName; // for now only having name of the account's owner, we can also have a seperate
     // model User and have several properties like name, dob, address etc.
 
-    public Account(double balance, String userName) {
-        this.balance = balance;
+    public Account(String accountNumber, double balance, String userName) {
+        this.accountNumber = accountNumber;
+        this.balanceCents = new AtomicLong(toCents(balance));
         this.userName = userName;
     }
 
+    // gets a random account number, which won't match the log after a restart
+    public Account(double balance, String userName) {
+        this(UUID.randomUUID().toString(), balance, userName);
+    }
+
+    static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
     public double getBalance() {
-        return balance;
+        return balanceCents.get() / 100.0;
+    }
+
+    public long getBalanceCents() {
+        return balanceCents.get();
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
     }
 
     public String getUserName() {
@@ -32,12 +54,26 @@ class Account {
     }
 
     public void setBalance(double balance) {
-        this.balance = balance;
+        this.balanceCents.set(toCents(balance));
     }
 
     public void setUserName(String userName) {
         this.userName = userName;
     }
+
+    // atomically checks and debits, returns false (and changes nothing) on insufficient funds
+    public boolean withdraw(long cents) {
+        long current;
+        do {
+            current = balanceCents.get();
+            if (current < cents) return false;
+        } while (!balanceCents.compareAndSet(current, current - cents));
+        return true;
+    }
+
+    public void deposit(long cents) {
+        balanceCents.addAndGet(cents);
+    }
 }
 
 class Card {
@@ -57,6 +93,38 @@ interface State {
     void handleFlow();
 }
 
+// where the ATM reads key presses from, a Scanner for the console or queued events for simulated terminals
+interface AtmInput {
+    int nextInt();
+    double nextDouble();
+}
+
+// where the ATM shows its messages
+interface AtmDisplay {
+    AtmDisplay CONSOLE = System.out::println;
+    AtmDisplay SILENT = message -> { };
+
+    void show(String message);
+}
+
+class ScannerAtmInput implements AtmInput {
+    private final Scanner sc;
+
+    public ScannerAtmInput(Scanner sc) {
+        this.sc = sc;
+    }
+
+    @Override
+    public int nextInt() {
+        return sc.nextInt();
+    }
+
+    @Override
+    public double nextDouble() {
+        return sc.nextDouble();
+    }
+}
+
 enum StateEnum {
     WELCOME,
     INSERT_CARD,
@@ -66,139 +134,166 @@ enum StateEnum {
 }
 
 class WelcomeState implements State {
+    AtmDisplay display;
+
+    public WelcomeState(AtmDisplay display) {
+        this.display = display;
+    }
+
     @Override
     public void handleFlow() {
-        System.out.println("Hello! Welcome to XYZ atm");
+        display.show("Hello! Welcome to XYZ atm");
     }
 }
 
 class InsertCardState implements State {
+    AtmDisplay display;
+
+    public InsertCardState(AtmDisplay display) {
+        this.display = display;
+    }
+
     @Override
     public void handleFlow() {
-        System.out.println("Insert your card");
+        display.show("Insert your card");
     }
 }
 
 class TransactionState implements State {
     Card card;
-    Scanner sc;
+    AtmInput input;
+    AtmDisplay display;
+    TransactionLog log; // when set, transactions are logged durably and settled in batches
 
-    public TransactionState(Card card, Scanner sc) {
+    public TransactionState(Card card, AtmInput input, AtmDisplay display, TransactionLog log) {
         this.card = card;
-        this.sc = sc;
+        this.input = input;
+        this.display = display;
+        this.log = log;
+    }
+
+    public TransactionState(Card card, AtmInput input, AtmDisplay display) {
+        this(card, input, display, null);
     }
 
     @Override
     public void handleFlow() {
-        System.out.println("Press 1 to withdraw or 2 to deposit");
-        int keyPress = sc.nextInt();
-        System.out.println("Enter amount");
-        double amount = sc.nextDouble();
-        double accountBalance = card.getAccount().getBalance();
-        if (keyPress == 1) {
-            if (accountBalance < amount)
-                System.out.println("Insufficient funds!");
-            else
-                card.getAccount().setBalance(accountBalance - amount);
+        display.show("Press 1 to withdraw or 2 to deposit");
+        int keyPress = input.nextInt();
+        display.show("Enter amount");
+        long amount = Account.toCents(input.nextDouble());
+        if (amount <= 0) {
+            display.show("Invalid amount!");
+        } else if (keyPress == 1) {
+            if (!withdraw(amount))
+                display.show("Insufficient funds!");
         } else if (keyPress == 2) {
-            card.getAccount().setBalance(accountBalance + amount);
+            deposit(amount);
         }
-        System.out.println("Your current balance : " + card.getAccount().getBalance());
+        display.show("Your current balance : " + card.getAccount().getBalance());
+    }
+
+    // with a log the call returns once the transaction is on disk and settled
+    private boolean withdraw(long amount) {
+        if (log == null) return card.getAccount().withdraw(amount);
+        return log.withdraw(card.getAccount(), amount).join();
+    }
+
+    private void deposit(long amount) {
+        if (log == null) card.getAccount().deposit(amount);
+        else log.deposit(card.getAccount(), amount).join();
     }
 }
 
 class RemoveCardState implements State {
+    AtmDisplay display;
+
+    public RemoveCardState(AtmDisplay display) {
+        this.display = display;
+    }
+
     @Override
     public void handleFlow() {
-        System.out.println("Please remove your card");
+        display.show("Please remove your card");
     }
 }
 
 
 class EndState implements State {
+    AtmDisplay display;
+
+    public EndState(AtmDisplay display) {
+        this.display = display;
+    }
+
     @Override
     public void handleFlow() {
-        System.out.println("Thank you!");
+        display.show("Thank you!");
     }
 }
 
 class AtmContext {
-    Map<Class<? extends State>, State> cache; // to store the state objects for a particular user,
-    // no need to create states everytime the user is in that step
-    StateEnum[] allStates;
-    int currentState, totalStates;
+    State[] states; // one pre-built state object per StateEnum, indexed by ordinal,
+    // no need to create or look up states everytime the user is in that step
+    AtmTransitions transitions;
+    StateEnum currentState;
     State state;
     Card card;
-    Scanner sc;
+    AtmInput input;
+    AtmDisplay display;
+    StateMetrics metrics; // optional, records how long the session stays in each state
+    long enteredAt;
 
     // create a new ATM context
-    public AtmContext(Card card, Scanner sc) {
+    public AtmContext(Card card, AtmInput input, AtmDisplay display, AtmTransitions transitions, TransactionLog log) {
         this.card = card;
-        cache = new HashMap<>();
-        allStates = StateEnum.values();
-        currentState = -1;
-        totalStates = allStates.length;
-        this.sc = sc;
+        this.input = input;
+        this.display = display;
+        this.transitions = transitions;
+        states = new State[StateEnum.values().length];
+        states[StateEnum.WELCOME.ordinal()] = new WelcomeState(display);
+        states[StateEnum.INSERT_CARD.ordinal()] = new InsertCardState(display);
+        states[StateEnum.TRANSACTION.ordinal()] = new TransactionState(card, input, display, log);
+        states[StateEnum.REMOVE_CARD.ordinal()] = new RemoveCardState(display);
+        states[StateEnum.THANK_YOU.ordinal()] = new EndState(display);
+    }
+
+    public AtmContext(Card card, AtmInput input, AtmDisplay display, AtmTransitions transitions) {
+        this(card, input, display, transitions, null);
+    }
+
+    public AtmContext(Card card, AtmInput input, AtmDisplay display) {
+        this(card, input, display, AtmTransitions.linear());
+    }
+
+    public AtmContext(Card card, Scanner sc) {
+        this(card, new ScannerAtmInput(sc), AtmDisplay.CONSOLE);
     }
 
     public void setState(State state) {
         this.state = state;
     }
 
+    // dwell time in the current state is counted from here, not from the last transition before metrics were set
+    public void setMetrics(StateMetrics metrics) {
+        this.enteredAt = System.nanoTime();
+        this.metrics = metrics;
+    }
+
     public void execute(boolean cancel) {
-        if (cancel) {
-            currentState = totalStates - 1;
-        } else {
-            // set the step to next one
-            currentState++;
-            // if we are at the last state, set it to 0 i.e welcome state
-            if (currentState == totalStates) {
-                currentState = 0;
-            }
+        StateEnum previous = currentState;
+        currentState = transitions.next(currentState, cancel);
+        if (metrics != null) {
+            long now = System.nanoTime();
+            if (previous != null) metrics.record(previous, currentState, now - enteredAt);
+            enteredAt = now;
         }
-        handleFlow(allStates[currentState]);
+        handleFlow(currentState);
     }
 
     public void handleFlow(StateEnum eStateEnum) { // passing the current state we are in and executing respective
         // state's handle flow
-        switch (eStateEnum) {
-            case WELCOME:
-                if (!cache.containsKey(WelcomeState.class)) {
-                    cache.put(WelcomeState.class, new WelcomeState());
-                }
-                setState(cache.get(WelcomeState.class));
-                break;
-
-            case INSERT_CARD:
-                if (!cache.containsKey(InsertCardState.class)) {
-                    cache.put(InsertCardState.class, new InsertCardState());
-                }
-                setState(cache.get(InsertCardState.class));
-                break;
-
-            case TRANSACTION:
-                if (!cache.containsKey(TransactionState.class)) {
-                    cache.put(TransactionState.class, new TransactionState(card, sc));
-                }
-                setState(cache.get(TransactionState.class));
-                break;
-
-            case REMOVE_CARD:
-                if (!cache.containsKey(RemoveCardState.class)) {
-                    cache.put(RemoveCardState.class, new RemoveCardState());
-                }
-                setState(cache.get(RemoveCardState.class));
-                break;
-
-            case THANK_YOU:
-                if (!cache.containsKey(EndState.class)) {
-                    cache.put(EndState.class, new EndState());
-                }
-                setState(cache.get(EndState.class));
-                break;
-            default:
-                throw new IllegalArgumentException("Unknown state: " + eStateEnum);
-        }
+        setState(states[eStateEnum.ordinal()]);
         this.state.handleFlow();
     }
 }
@@ -0,0 +1,110 @@
+package state;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-state dwell time histograms and transition counts for AtmContext, shareable by any number of sessions.
+ *
+ * Histograms use HDR-style log-linear buckets: exact below 32ns, then 32 sub-buckets per power of two,
+ * so every value is kept within ~3% precision. Recording is a couple of atomic increments on preallocated
+ * arrays and never allocates. snapshot() copies the counters while sessions keep running.
+ */
+class StateMetrics {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final StateEnum[] STATES = StateEnum.values();
+
+    private final AtomicLongArray dwell = new AtomicLongArray(STATES.length * BUCKETS);
+    private final AtomicLongArray transitions = new AtomicLongArray(STATES.length * STATES.length);
+
+    void record(StateEnum from, StateEnum to, long dwellNanos) {
+        transitions.incrementAndGet(from.ordinal() * STATES.length + to.ordinal());
+        dwell.incrementAndGet(from.ordinal() * BUCKETS + bucket(Math.max(0, dwellNanos)));
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // smallest value that falls into the bucket
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << shift;
+    }
+
+    // largest value that falls into the bucket
+    static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+
+    Snapshot snapshot() {
+        long[] dwellCopy = new long[dwell.length()];
+        for (int i = 0; i < dwellCopy.length; i++) dwellCopy[i] = dwell.get(i);
+        long[] transitionCopy = new long[transitions.length()];
+        for (int i = 0; i < transitionCopy.length; i++) transitionCopy[i] = transitions.get(i);
+        return new Snapshot(dwellCopy, transitionCopy);
+    }
+
+    static final class Snapshot {
+        private final long[] dwell;
+        private final long[] transitions;
+
+        private Snapshot(long[] dwell, long[] transitions) {
+            this.dwell = dwell;
+            this.transitions = transitions;
+        }
+
+        long count(StateEnum state) {
+            long total = 0;
+            for (int b = 0; b < BUCKETS; b++) total += dwell[state.ordinal() * BUCKETS + b];
+            return total;
+        }
+
+        long transitions(StateEnum from, StateEnum to) {
+            return transitions[from.ordinal() * STATES.length + to.ordinal()];
+        }
+
+        // dwell time in nanos at the given quantile (0..1), reported as the lower bound of its bucket
+        long percentile(StateEnum state, double quantile) {
+            long total = count(state);
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += dwell[state.ordinal() * BUCKETS + b];
+                if (seen >= rank) return lowerBound(b);
+            }
+            return lowerBound(BUCKETS - 1);
+        }
+
+        // upper bound of the highest bucket with samples, the real maximum is at most this
+        long max(StateEnum state) {
+            for (int b = BUCKETS - 1; b >= 0; b--) {
+                if (dwell[state.ordinal() * BUCKETS + b] > 0) return upperBound(b);
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (StateEnum state : STATES) {
+                sb.append(String.format("%-12s count=%d p50=%dns p99=%dns p999=%dns max<=%dns%n", state, count(state),
+                        percentile(state, 0.5), percentile(state, 0.99), percentile(state, 0.999), max(state)));
+            }
+            for (StateEnum from : STATES) {
+                for (StateEnum to : STATES) {
+                    long n = transitions(from, to);
+                    if (n > 0) sb.append(String.format("%s -> %s: %d%n", from, to, n));
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package state;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Durable log for ATM transactions with group commit and batched settlement.
+ *
+ * Callers submit withdrawals and deposits and get a future. A single committer thread takes everything queued
+ * so far and settles it against the accounts: entries are evaluated in submission order per account and each
+ * account is updated once with the net result. The batch is then appended to the log with each entry's outcome
+ * and fsynced once. The future completes after that with true, or false for a withdrawal rejected for
+ * insufficient funds. If the write fails the file is cut back to where the batch started, the batch is reverted
+ * and the futures fail.
+ *
+ * Records are [int payload length][int crc32][long sequence][byte type][long cents][byte accepted]
+ * [int n][n bytes account number]. Reopening a log continues its sequence after cutting off a torn last record,
+ * replay() rebuilds balances from it.
+ */
+class TransactionLog implements AutoCloseable {
+    static final byte WITHDRAW = 1;
+    static final byte DEPOSIT = 2;
+
+    private static final int MAX_BATCH = 4096;
+    private static final int MIN_PAYLOAD = 8 + 1 + 8 + 1 + 4;
+    private static final Entry POISON = new Entry(null, (byte) 0, 0);
+
+    private static final class Entry {
+        final Account account;
+        final byte type;
+        final long cents;
+        final CompletableFuture<Boolean> settled = new CompletableFuture<>();
+        boolean accepted;
+
+        Entry(Account account, byte type, long cents) {
+            this.account = account;
+            this.type = type;
+            this.cents = cents;
+        }
+    }
+
+    interface RecordVisitor {
+        void visit(long sequence, byte type, long cents, boolean accepted, String accountNumber);
+    }
+
+    private final FileChannel channel;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+    private long sequence;
+    // guarded by this, set before POISON is queued so nothing can be queued behind it
+    private boolean closed;
+
+    TransactionLog(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long[] last = {0};
+        long valid = scan(channel, (sequence, type, cents, accepted, accountNumber) -> last[0] = sequence);
+        channel.truncate(valid);
+        channel.position(valid);
+        this.sequence = last[0];
+        this.committer = new Thread(this::run, "transaction-log-committer");
+        this.committer.start();
+    }
+
+    CompletableFuture<Boolean> withdraw(Account account, long cents) {
+        return submit(new Entry(account, WITHDRAW, cents));
+    }
+
+    CompletableFuture<Boolean> deposit(Account account, long cents) {
+        return submit(new Entry(account, DEPOSIT, cents));
+    }
+
+    private synchronized CompletableFuture<Boolean> submit(Entry entry) {
+        if (closed) {
+            throw new IllegalStateException("Transaction log is closed");
+        }
+        queue.add(entry);
+        return entry.settled;
+    }
+
+    /**
+     * Applies the accepted transactions in the log to the accounts, looked up by account number.
+     * The accounts must hold their balances from before the log was started. Returns the last sequence number.
+     */
+    static long replay(Path file, Map<String, Account> accounts) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] last = {0};
+            scan(channel, (sequence, type, cents, accepted, accountNumber) -> {
+                last[0] = sequence;
+                Account account = accounts.get(accountNumber);
+                if (accepted && account != null) {
+                    account.deposit(type == DEPOSIT ? cents : -cents);
+                }
+            });
+            return last[0];
+        }
+    }
+
+    // reads records from the start of the channel until the end or the first torn record, returns where that is
+    private static long scan(FileChannel channel, RecordVisitor visitor) throws IOException {
+        channel.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+        CRC32 crc = new CRC32();
+        long position = 0;
+        long size = channel.size();
+        try {
+            while (position + 8 <= size) {
+                int payload = in.readInt();
+                int checksum = in.readInt();
+                if (payload < MIN_PAYLOAD || position + 8 + payload > size) break;
+                byte[] body = new byte[payload];
+                in.readFully(body);
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) break;
+                ByteBuffer record = ByteBuffer.wrap(body);
+                long sequence = record.getLong();
+                byte type = record.get();
+                long cents = record.getLong();
+                boolean accepted = record.get() != 0;
+                int n = record.getInt();
+                if (n != record.remaining()) break;
+                visitor.visit(sequence, type, cents, accepted, new String(body, record.position(), n, StandardCharsets.UTF_8));
+                position += 8 + payload;
+            }
+        } catch (EOFException e) {
+            // torn record at the end
+        }
+        return position;
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>();
+        boolean open = true;
+        while (open) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            if (batch.remove(POISON)) {
+                open = false;
+                queue.drainTo(batch);
+            }
+            try {
+                // a batch can take several writes, a failure part way must not leave accepted records behind
+                long position = channel.position();
+                long firstSequence = sequence;
+                settle(batch);
+                try {
+                    write(batch);
+                } catch (IOException | RuntimeException e) {
+                    sequence = firstSequence;
+                    try {
+                        channel.truncate(position);
+                        channel.position(position);
+                    } catch (IOException truncateFailed) {
+                        e.addSuppressed(truncateFailed);
+                    }
+                    revert(batch);
+                    throw e;
+                }
+                for (Entry entry : batch) entry.settled.complete(entry.accepted);
+            } catch (IOException | RuntimeException e) {
+                for (Entry entry : batch) entry.settled.completeExceptionally(e);
+            }
+            batch.clear();
+        }
+    }
+
+    // one write and one fsync for the whole batch
+    private void write(List<Entry> batch) throws IOException {
+        buffer.clear();
+        for (Entry entry : batch) {
+            byte[] account = entry.account.getAccountNumber().getBytes(StandardCharsets.UTF_8);
+            int payload = MIN_PAYLOAD + account.length;
+            if (buffer.remaining() < 8 + payload) {
+                flush();
+                if (buffer.capacity() < 8 + payload) buffer = ByteBuffer.allocate(8 + payload);
+            }
+            int start = buffer.position();
+            buffer.putInt(payload).putInt(0)
+                    .putLong(++sequence).put(entry.type).putLong(entry.cents).put((byte) (entry.accepted ? 1 : 0))
+                    .putInt(account.length).put(account);
+            crc.reset();
+            crc.update(buffer.array(), start + 8, payload);
+            buffer.putInt(start + 4, (int) crc.getValue());
+        }
+        flush();
+        channel.force(false);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    private static void settle(List<Entry> batch) {
+        Map<Account, List<Entry>> byAccount = new IdentityHashMap<>();
+        for (Entry entry : batch) {
+            byAccount.computeIfAbsent(entry.account, a -> new ArrayList<>()).add(entry);
+        }
+        for (Map.Entry<Account, List<Entry>> group : byAccount.entrySet()) {
+            settle(group.getKey(), group.getValue());
+        }
+    }
+
+    // evaluates the account's entries in order, then applies the net change with one atomic update
+    private static void settle(Account account, List<Entry> entries) {
+        long opening = account.getBalanceCents();
+        long running = opening;
+        for (Entry entry : entries) {
+            if (entry.type == DEPOSIT) {
+                running += entry.cents;
+                entry.accepted = true;
+            } else if (running >= entry.cents) {
+                running -= entry.cents;
+                entry.accepted = true;
+            }
+        }
+        long net = running - opening;
+        boolean applied = net >= 0 ? credit(account, net) : account.withdraw(-net);
+        if (!applied) {
+            // someone debited the account outside the log meanwhile, fall back to one update per entry
+            for (Entry entry : entries) {
+                entry.accepted = entry.type == DEPOSIT ? credit(account, entry.cents) : account.withdraw(entry.cents);
+            }
+        }
+    }
+
+    // undoes a settled batch whose records could not be written
+    private static void revert(List<Entry> batch) {
+        for (Entry entry : batch) {
+            if (entry.accepted) {
+                entry.account.deposit(entry.type == DEPOSIT ? -entry.cents : entry.cents);
+                entry.accepted = false;
+            }
+        }
+    }
+
+    private static boolean credit(Account account, long cents) {
+        account.deposit(cents);
+        return true;
+    }
+
+    // settles everything already submitted, then closes the file. Later submits are rejected
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            queue.add(POISON);
+        }
+        try {
+            committer.join();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,40 +1,254 @@
 package strategy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 // Define the strategy interface
+// Paths are absolute, segments separated by '/', empty segments are ignored.
+// "." and ".." have no special meaning here, FileSystem resolves them before calling the strategy
 interface PathStorageStrategy {
-    // No methods needed for this example
+    boolean isDirectory(String path);
+
+    boolean isFile(String path);
+
+    // creates missing parent directories too, false when a file is in the way
+    boolean mkdirs(String path);
+
+    // sorted child names, null when the path is not a directory
+    List<String> list(String path);
+
+    // null when the path is not a file
+    String read(String path);
+
+    // creates the file and missing parent directories, false when a directory is in the way
+    boolean append(String path, String content);
 }
 
 // Concrete strategy for TriePathStorage
+// One node per path segment, children kept in a sorted array and found by binary search, so resolving a path
+// costs O(depth * log(fan-out)) and compares segments in place without splitting the path.
+// Segment names are interned in a pool of their own, the many directories called "src" or "docs" share one string.
 class TriePathStorageStrategy implements PathStorageStrategy {
-    // No additional methods needed for this example
+    private static final Node[] LEAF = new Node[0];
+
+    private static final class Node {
+        final String name;
+        Node[] children = LEAF;
+        int size;
+        // null for directories
+        String content;
+
+        Node(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Node root = new Node("");
+    private final Map<String, String> segments = new HashMap<>();
+
+    @Override
+    public boolean isDirectory(String path) {
+        Node node = resolve(path);
+        return node != null && node.content == null;
+    }
+
+    @Override
+    public boolean isFile(String path) {
+        Node node = resolve(path);
+        return node != null && node.content != null;
+    }
+
+    @Override
+    public boolean mkdirs(String path) {
+        return create(path, false) != null;
+    }
+
+    @Override
+    public List<String> list(String path) {
+        Node node = resolve(path);
+        if (node == null || node.content != null) return null;
+        List<String> names = new ArrayList<>(node.size);
+        for (int i = 0; i < node.size; i++) names.add(node.children[i].name);
+        return names;
+    }
+
+    @Override
+    public String read(String path) {
+        Node node = resolve(path);
+        return node == null ? null : node.content;
+    }
+
+    @Override
+    public boolean append(String path, String content) {
+        Node node = create(path, true);
+        if (node == null) return false;
+        node.content = node.content.isEmpty() ? content : node.content + content;
+        return true;
+    }
+
+    private Node resolve(String path) {
+        Node node = root;
+        int from = 0;
+        while (node != null && (from = skipSlashes(path, from)) < path.length()) {
+            int to = segmentEnd(path, from);
+            int index = find(node, path, from, to);
+            node = index < 0 ? null : node.children[index];
+            from = to;
+        }
+        return node;
+    }
+
+    // walks the path creating missing directories, the last segment becomes a file when file is set.
+    // the existing part is checked first, so a path that can't be created leaves nothing behind
+    private Node create(String path, boolean file) {
+        Node node = root;
+        int from = skipSlashes(path, 0);
+        if (file && from == path.length()) return null;
+        while (from < path.length()) {
+            if (node.content != null) return null;
+            int index = find(node, path, from, segmentEnd(path, from));
+            if (index < 0) break;
+            node = node.children[index];
+            from = skipSlashes(path, segmentEnd(path, from));
+        }
+        if (from == path.length()) {
+            return file == (node.content != null) ? node : null;
+        }
+        while (from < path.length()) {
+            int to = segmentEnd(path, from);
+            int next = skipSlashes(path, to);
+            Node child = new Node(intern(path.substring(from, to)));
+            if (file && next == path.length()) child.content = "";
+            insert(node, -find(node, path, from, to) - 1, child);
+            node = child;
+            from = next;
+        }
+        return node;
+    }
+
+    // binary search over the sorted children, -(insertion point) - 1 when missing
+    private static int find(Node node, String path, int from, int to) {
+        int low = 0, high = node.size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(node.children[mid].name, path, from, to);
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return mid;
+        }
+        return -(low + 1);
+    }
+
+    // name compared to path[from, to), like String.compareTo
+    private static int compare(String name, String path, int from, int to) {
+        int length = to - from, n = Math.min(name.length(), length);
+        for (int i = 0; i < n; i++) {
+            int cmp = name.charAt(i) - path.charAt(from + i);
+            if (cmp != 0) return cmp;
+        }
+        return name.length() - length;
+    }
+
+    private static void insert(Node parent, int index, Node child) {
+        if (parent.size == parent.children.length) {
+            // grow by half, most directories stay small
+            parent.children = Arrays.copyOf(parent.children, Math.max(2, parent.size + (parent.size >> 1)));
+        }
+        System.arraycopy(parent.children, index, parent.children, index + 1, parent.size - index);
+        parent.children[index] = child;
+        parent.size++;
+    }
+
+    private String intern(String segment) {
+        String pooled = segments.putIfAbsent(segment, segment);
+        return pooled == null ? segment : pooled;
+    }
+
+    private static int skipSlashes(String path, int from) {
+        while (from < path.length() && path.charAt(from) == '/') from++;
+        return from;
+    }
+
+    private static int segmentEnd(String path, int from) {
+        int slash = path.indexOf('/', from);
+        return slash < 0 ? path.length() : slash;
+    }
 }
 
 // Context class that uses the strategy
 class FileSystem {
     private PathStorageStrategy storageStrategy;
+    private String currentDirectory = "/";
 
     public FileSystem(PathStorageStrategy storageStrategy) {
         this.storageStrategy = storageStrategy;
     }
 
     public void ls() {
-        System.out.println("Listing files and directories");
+        System.out.println("Listing " + currentDirectory + ": " + storageStrategy.list(currentDirectory));
     }
 
     public void mkdir(String directoryName) {
-        System.out.println("Creating directory " + directoryName);
+        String path = absolute(directoryName);
+        if (storageStrategy.mkdirs(path)) {
+            System.out.println("Created directory " + path);
+        } else {
+            System.out.println("Cannot create directory " + path + ", a file is in the way");
+        }
     }
 
     public void get_content_from_file(String filePath) {
-        System.out.println("Getting content from file " + filePath);
+        String path = absolute(filePath);
+        String content = storageStrategy.read(path);
+        if (content == null) {
+            System.out.println("No such file " + path);
+        } else {
+            System.out.println("Content of " + path + ": " + content);
+        }
     }
 
     public void add_content_to_file(String filePath, String content) {
-        System.out.println("Adding content to file " + filePath);
+        String path = absolute(filePath);
+        if (storageStrategy.append(path, content)) {
+            System.out.println("Added content to file " + path);
+        } else {
+            System.out.println("Cannot write to " + path + ", it is a directory");
+        }
     }
 
     public void navigate(String path, boolean createDirIfMissing) {
-        System.out.println("Navigate to path " + path + ", createDirIfMissing=" + createDirIfMissing);
+        String target = absolute(path);
+        if (!storageStrategy.isDirectory(target) && !(createDirIfMissing && storageStrategy.mkdirs(target))) {
+            System.out.println("No such directory " + target);
+            return;
+        }
+        currentDirectory = target;
+        System.out.println("Current directory is " + target);
+    }
+
+    // resolves path against the current directory and normalises it: "." is dropped, ".." goes up
+    // (and stays at the root), so the result is "/" or "/a/b" without empty segments
+    private String absolute(String path) {
+        Deque<String> segments = new ArrayDeque<>();
+        if (!path.startsWith("/")) {
+            for (String segment : currentDirectory.split("/")) {
+                if (!segment.isEmpty()) segments.addLast(segment);
+            }
+        }
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) continue;
+            if (segment.equals("..")) {
+                segments.pollLast();
+            } else {
+                segments.addLast(segment);
+            }
+        }
+        return segments.isEmpty() ? "/" : "/" + String.join("/", segments);
     }
 }
 
@@ -51,5 +265,11 @@ public class Main {
         fs.add_content_to_file("/home/user/documents/file.txt", "New content");
         fs.navigate("/home/user/documents", true);
         fs.ls();
+        fs.add_content_to_file("notes.txt", "Relative to the current directory");
+        fs.get_content_from_file("/home/user/documents/notes.txt");
+        fs.navigate("/tmp/missing", false);
+        fs.mkdir("/home/user/documents/file.txt/nested");
+        fs.navigate("../..", false);
+        fs.ls();
     }
 }